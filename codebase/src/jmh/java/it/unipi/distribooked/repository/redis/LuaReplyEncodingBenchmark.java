@@ -0,0 +1,98 @@
+package it.unipi.distribooked.repository.redis;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.util.RedisInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side of a reservation with each reply encoding of reserve_book.lua, from the bytes read from
+ * the socket to the ReservationResult, parsed by Jedis as EVALSHA does:
+ * - a JSON string built with cjson.encode, decoded with a new ObjectMapper into a Map, as before LuaResultCodec;
+ * - the same JSON string, decoded with a cached Jackson ObjectReader;
+ * - a native RESP array {0, reservationTime, expiryTime}, decoded by LuaResultCodec.decodeReservation.
+ * The error reply of cancel_book_reservation.lua, {1, err}, is decoded by LuaResultCodec.decodeStatus as well,
+ * as the reference for the scripts that reply with a status only.
+ *
+ * Scores are reservations per second on one thread, to compare with the peak reservation rate; with
+ * -prof gc, gc.alloc.rate.norm is the number of bytes allocated per reservation. The cost of cjson.encode
+ * is paid by Redis, not measured here, and is saved as well with the RESP reply.
+ * mvn -Pjmh test-compile exec:exec -Djmh.args="LuaReplyEncodingBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LuaReplyEncodingBenchmark {
+
+    private static final String JSON_REPLY =
+            "{\"status\":\"Reservation successful\",\"reservationTime\":1739117578830,\"expiryTime\":1739290378830}";
+
+    // Replies as sent by Redis
+    private static final byte[] JSON_REPLY_BYTES = ("$" + JSON_REPLY.length() + "\r\n" + JSON_REPLY + "\r\n")
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESP_REPLY_BYTES = "*3\r\n:0\r\n:1739117578830\r\n:1739290378830\r\n"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESP_ERROR_REPLY_BYTES = "*2\r\n:1\r\n$31\r\nUser reservation does not exist\r\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectReader reservationReader = new ObjectMapper()
+            .readerFor(LuaResultCodec.ReservationResult.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final LuaResultCodec luaResultCodec = new LuaResultCodec();
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public LuaResultCodec.ReservationResult jsonReplyMapperPerCall() throws IOException {
+        String reply = (String) read(JSON_REPLY_BYTES);
+        Map<String, Object> resultMap = new ObjectMapper().readValue(reply, Map.class);
+
+        if (resultMap.containsKey("err")) {
+            return new LuaResultCodec.ReservationResult((String) resultMap.get("err"), null, null);
+        }
+        return new LuaResultCodec.ReservationResult(null,
+                ((Number) resultMap.get("reservationTime")).longValue(),
+                ((Number) resultMap.get("expiryTime")).longValue());
+    }
+
+    @Benchmark
+    public LuaResultCodec.ReservationResult jsonReply() throws IOException {
+        String reply = (String) read(JSON_REPLY_BYTES);
+        return reservationReader.readValue(reply);
+    }
+
+    @Benchmark
+    public LuaResultCodec.ReservationResult respReply() {
+        return luaResultCodec.decodeReservation(read(RESP_REPLY_BYTES));
+    }
+
+    @Benchmark
+    public LuaResultCodec.StatusResult respErrorReply() {
+        return luaResultCodec.decodeStatus(read(RESP_ERROR_REPLY_BYTES));
+    }
+
+    private static Object read(byte[] reply) {
+        RedisInputStream input = new RedisInputStream(new ByteArrayInputStream(reply), reply.length);
+        return BuilderFactory.ENCODED_OBJECT.build(Protocol.read(input));
+    }
+}
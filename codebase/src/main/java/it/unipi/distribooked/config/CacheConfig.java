@@ -0,0 +1,14 @@
+package it.unipi.distribooked.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables Spring's cache abstraction.
+ * The caches themselves (Caffeine, bounded by size and expiring after write) are configured
+ * through the spring.cache.* properties, and their statistics are published as cache.* metrics.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -1,5 +1,7 @@
 package it.unipi.distribooked.config;
 
+import com.mongodb.ReadPreference;
+import com.mongodb.TransactionOptions;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import it.unipi.distribooked.model.Book;
@@ -10,6 +12,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
 import org.springframework.data.mongodb.core.index.GeospatialIndex;
@@ -40,6 +43,15 @@ public class MongoConfig {
         return new MongoTemplate(mongoClient(), "library"); // Specifies the database name
     }
 
+    // Defines the transaction manager shared by everything running MongoDB transactions (outbox batches,
+    // author updates). Reads inside a transaction must go to the primary, whatever the read preference of
+    // the connection string (secondaryPreferred on the cluster).
+    @Bean
+    public MongoTransactionManager transactionManager(MongoTemplate mongoTemplate) {
+        return new MongoTransactionManager(mongoTemplate.getMongoDatabaseFactory(),
+                TransactionOptions.builder().readPreference(ReadPreference.primary()).build());
+    }
+
 //    @EventListener(ContextRefreshedEvent.class)
 //    public void initIndices() {
 //        MongoTemplate mongoTemplate = mongoTemplate();
@@ -138,6 +138,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/v1/users/**").hasRole("USER")
                         .requestMatchers("/api/v1/reservations/**").hasRole("USER")
                         .requestMatchers("/api/v1/admin/**").hasRole("ADMIN") // Admin-specific endpoints are restricted to users with the ADMIN role
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN") // metrics (e.g. cache hit/miss counts) are restricted to admins
                         .anyRequest().authenticated() // All other endpoints require authentication
                 )
 //                .oauth2ResourceServer(oauth2 ->
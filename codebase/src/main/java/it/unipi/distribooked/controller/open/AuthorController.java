@@ -11,12 +11,15 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import it.unipi.distribooked.dto.AuthorDTO;
 import it.unipi.distribooked.dto.AuthorSearchDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.dto.swagger.ErrorResponse;
 import it.unipi.distribooked.dto.swagger.SuccessResponse;
 import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
 import it.unipi.distribooked.service.AuthorService;
 import it.unipi.distribooked.utils.ApiResponseUtil;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -199,26 +202,26 @@ public class AuthorController {
     /**
      * Retrieve paginated books for an author.
      *
-     * This endpoint allows clients to retrieve books for a specific author in a paginated manner.
+     * This endpoint allows clients to retrieve the books of a specific author one page at a time.
      *
-     * Typically, this endpoint is used after calling `/authors/{authorId}`, when the `hasMoreBooks`
-     * field in the response is `true`, indicating that the author has more than 20 books.
+     * Typically, this endpoint is used after calling `/authors/{authorId}`, which only returns the first
+     * 20 books of the author.
      *
-     * Clients can use the `page` parameter to specify which set of books to retrieve, where each page
-     * contains up to 20 books. For example, `page=0` retrieves books 1–20, `page=1` retrieves books 21–40, and so on.
+     * Pages are keyset-based: the first page is returned when no cursor is given, and the `nextCursor`
+     * field of each response fetches the following one, so that every page costs the same however deep it is.
      *
      * @param authorId The unique ID of the author to retrieve books for.
-     * @param page The page number (0-based) to retrieve.
-     * @return A paginated list of books for the specified author.
+     * @param cursor The cursor returned by the previous page, omitted for the first page.
+     * @param size The number of books per page.
+     * @return A page of books for the specified author and the cursor of the next page.
      */
     @Operation(
             summary = "Get paginated books",
             description = """
         Retrieve paginated books for an author. This endpoint is typically used after calling 
         `/authors/{authorId}`, to retrieve more than the first 20 books.
-        Use the `page` parameter to specify which set of books to retrieve 
-        (e.g., `page=0` for books 1–20, `page=1` for books 21–40, etc.) - default is 1, because the first 
-        20 books are returned together with the author in `/authors/{authorId}`.
+        Omit the `cursor` parameter to get the first page, then pass back the returned `nextCursor`
+        to fetch the following one; a null `nextCursor` means there are no more books.
     """
     )
     @ApiResponses(value = {
@@ -251,7 +254,7 @@ public class AuthorController {
                                       },
                                       ...
                                     ],
-                                    "page": 1
+                                    "nextCursor": "Njc5Y2IzNjBiNDc3OTkzYzVjZGRmODczOjIw"
                                   },
                                   "message": "Books retrieved successfully",
                                   "timestamp": "2025-02-09T17:30:28.2470955",
@@ -261,7 +264,7 @@ public class AuthorController {
                             )
                     )
             ),
-            @ApiResponse(responseCode = "400", description = "Invalid author ID or page number",
+            @ApiResponse(responseCode = "400", description = "Invalid author ID, cursor or page size",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "Author not found",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
@@ -273,15 +276,18 @@ public class AuthorController {
             @Parameter(description = "The ID of the author.", required = true)
             @Valid @ValidObjectId @PathVariable String authorId,
 
-            @Parameter(description = "The page number (0-based).", required = true)
-            @RequestParam(defaultValue = "1") int page) {
+            @Parameter(description = "Cursor returned by the previous page. Omit it to start from the first book.")
+            @RequestParam(required = false) String cursor,
 
-        logger.info("Fetching books for author with ID: {} on page: {}", authorId, page);
-        List<EmbeddedBookAuthor> books = authorService.getAuthorBooks(authorId, page);
+            @Parameter(description = "The number of books per page. Must be between 1 and 100.", example = "20")
+            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size) {
+
+        logger.info("Fetching books for author with ID: {} (cursor={}, size={})", authorId, cursor, size);
+        CursorPageDTO<EmbeddedBookAuthor> books = authorService.getAuthorBooks(authorId, cursor, size);
 
         Map<String, Object> response = new HashMap<>();
-        response.put("books", books);
-        response.put("page", page);
+        response.put("books", books.getContent());
+        response.put("nextCursor", books.getNextCursor());
 
         return ApiResponseUtil.ok("Books retrieved successfully", response);
     }
@@ -9,15 +9,23 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import it.unipi.distribooked.dto.AvailabilityMatrixDTO;
 import it.unipi.distribooked.dto.BookCatalogueDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.dto.BookDTO;
+import it.unipi.distribooked.dto.SuggestionDTO;
 import it.unipi.distribooked.dto.swagger.ErrorResponse;
 import it.unipi.distribooked.dto.swagger.SuccessResponse;
 import it.unipi.distribooked.service.AuthorService;
 import it.unipi.distribooked.service.BookService;
+import it.unipi.distribooked.service.SuggestionService;
 import it.unipi.distribooked.utils.ApiResponseUtil;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -31,6 +39,7 @@ import org.springframework.web.bind.annotation.*;
 import it.unipi.distribooked.validation.ValidObjectId;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -51,15 +60,25 @@ public class BookController {
     @Autowired
     private AuthorService authorService;
 
+    @Autowired
+    private SuggestionService suggestionService;
+
     /**
      * Browse the entire book catalog.
      *
      * This endpoint retrieves a paginated list of books in the catalog, including details
      * such as title, subtitle, authors, categories, and cover image URL.
      *
+     * When the cursor parameter is given, pages are keyset-based instead of offset-based: each page seeks
+     * right after the last book of the previous one, so deep pages cost the same as the first one, and
+     * no total count is computed.
+     *
      * @return A list of all books in the catalog.
      */
-    @Operation(summary = "Browse book catalog", description = "Retrieve a paginated list of books in the catalog.")
+    @Operation(summary = "Browse book catalog", description = "Retrieve a paginated list of books in the catalog. " +
+            "Pass an empty cursor to page with cursors instead of page numbers: the response then contains the " +
+            "books and a nextCursor to pass back for the following page (null when there are no more books), " +
+            "instead of the page metadata.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Books retrieved successfully",
                     content = @Content(
@@ -126,7 +145,21 @@ public class BookController {
                     example = "20",
                     in = ParameterIn.QUERY
             )
-            @RequestParam(defaultValue = "20") @Max(100) int size) {
+            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size,
+
+            @Parameter(
+                    description = "Cursor returned by the previous page, empty for the first page. " +
+                            "When given, the page number is ignored.",
+                    in = ParameterIn.QUERY
+            )
+            @RequestParam(required = false) String cursor) {
+
+        if (cursor != null) {
+            logger.info("Fetching books after cursor '{}' with size {}", cursor, size);
+            CursorPageDTO<BookCatalogueDTO> books = bookService.getAllBooks(cursor, size);
+            logger.info("Retrieved {} books", books.getContent().size());
+            return ApiResponseUtil.ok("Books retrieved successfully", books);
+        }
 
         logger.info("Fetching books page {} with size {}", page, size);
         Pageable pageable = PageRequest.of(page, size);
@@ -147,9 +180,14 @@ public class BookController {
      * @param sortByPopularity Optional flag to sort results by popularity.
      * @param page            Page number to retrieve (default: 0).
      * @param size            Number of books per page (default: 20, max: 100).
+     * @param cursor          Cursor returned by the previous page, empty for the first page, to use
+     *                        keyset pagination instead of page numbers.
      * @return A paginated list of books matching the filter criteria.
      */
-    @Operation(summary = "Filter books", description = "Retrieve books filtered by category and/or sorted by popularity.")
+    @Operation(summary = "Filter books", description = "Retrieve books filtered by category and/or sorted by popularity. " +
+            "Pass an empty cursor to page with cursors instead of page numbers: the response then contains the " +
+            "books and a nextCursor to pass back for the following page (null when there are no more books), " +
+            "instead of the page metadata.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Books filtered successfully",
                     content = @Content(
@@ -227,7 +265,11 @@ public class BookController {
             @RequestParam(defaultValue = "0") int page,
 
             @Parameter(description = "Number of books per page (max 100)", example = "20", in = ParameterIn.QUERY)
-            @RequestParam(defaultValue = "20") @Max(100) int size
+            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size,
+
+            @Parameter(description = "Cursor returned by the previous page, empty for the first page. " +
+                    "When given, the page number is ignored.", in = ParameterIn.QUERY)
+            @RequestParam(required = false) String cursor
     ) {
         logger.info("Filtering books - category: {}, sortByPopularity: {}, page: {}, size: {}", category, sortByPopularity, page, size);
 
@@ -237,6 +279,13 @@ public class BookController {
             throw new IllegalArgumentException("At least one filter (category or sortByPopularity) must be specified");
         }
 
+        if (cursor != null) {
+            CursorPageDTO<BookCatalogueDTO> filteredBooks = bookService.filterBooks(category, sortByPopularity, cursor, size);
+            logger.info("Retrieved {} books matching the filter criteria after cursor '{}'",
+                    filteredBooks.getContent().size(), cursor);
+            return ApiResponseUtil.ok("Books filtered successfully", filteredBooks);
+        }
+
         Pageable pageable = PageRequest.of(page, size);
         Page<BookCatalogueDTO> filteredBooks = bookService.filterBooks(category, sortByPopularity, pageable);
 
@@ -248,18 +297,19 @@ public class BookController {
     /**
      * Search books by title and optionally by author.
      *
-     * This endpoint allows users to search for books by specifying a title. If only the title is provided,
-     * the search requires an exact match with the full title. However, if an author is also specified,
-     * the system performs a more flexible search that matches partial titles (case-insensitive).
-     *
-     * POSSIBLE IMPROVEMENT: elastic search
+     * This endpoint allows users to search for books by specifying words of the title or of the author names,
+     * ranked by relevance through a MongoDB text index. With prefix=true it instead returns the books whose title
+     * starts with the given text (case-insensitive), as needed by typeahead. If an author is also specified,
+     * only the books of that author are returned.
      *
-     * @param title  Mandatory filter for the book title.
-     * @param author Optional filter for the author's name.
+     * @param title  Mandatory words, or beginning, of the book title.
+     * @param author Optional filter for the author's full name.
+     * @param prefix Whether to match the beginning of the title instead of words.
      * @return A list of books matching the criteria, represented as `BookCatalogueDTO`.
      * @throws IllegalArgumentException if the title is not provided.
      */
-    @Operation(summary = "Search books", description = "Search books by title (exact match) and optionally by author (allows partial matches on title if author's name matches).")
+    @Operation(summary = "Search books", description = "Search books by words of the title or author names, ranked by relevance, " +
+            "or by the beginning of the title (case-insensitive) with prefix=true, and optionally by author.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Books retrieved successfully",
                     content = @Content(
@@ -306,22 +356,27 @@ public class BookController {
     })
     @GetMapping("/search")
     public ResponseEntity<Map<String, Object>> searchBooks(
-            @Parameter(description = "Filter by book title. This parameter is mandatory. Requires an exact match if no author is specified.",
+            @Parameter(description = "Words of the book title or author names, or beginning of the title if prefix is true. This parameter is mandatory.",
                     example = "Effective Java",
                     required = true,
                     in = ParameterIn.QUERY)
             @RequestParam(required = true) String title,
 
-            @Parameter(description = "Filter by author name. This parameter is optional. Enables a more flexible search for partial titles.",
+            @Parameter(description = "Filter by author full name. This parameter is optional.",
                     example = "Joshua Bloch",
                     in = ParameterIn.QUERY)
             @RequestParam(required = false) String author,
 
+            @Parameter(description = "Match the beginning of the title instead of words, for typeahead.",
+                    example = "false",
+                    in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "false") boolean prefix,
+
             @RequestParam(defaultValue = "0") int page) {
 
-        logger.info("Searching books with title: {}, author: {}, page: {}", title, author, page);
+        logger.info("Searching books with title: {}, author: {}, prefix: {}, page: {}", title, author, prefix, page);
 
-        Page<BookCatalogueDTO> bookPage = bookService.searchBooks(title, author, page);
+        Page<BookCatalogueDTO> bookPage = bookService.searchBooks(title, author, prefix, page);
 
         Map<String, Object> response = new HashMap<>();
         response.put("books", bookPage.getContent());
@@ -332,6 +387,69 @@ public class BookController {
         return ApiResponseUtil.ok("Books retrieved successfully", response);
     }
 
+    /**
+     * Suggest books and authors as the user types in the search box.
+     *
+     * Suggestions are served from an in-memory prefix tree of the book titles and author names, without
+     * querying the database, and ranked by number of readings.
+     *
+     * @param prefix The text typed so far.
+     * @param limit  The maximum number of suggestions, at most suggest.max-results (10 by default), which is
+     *               the number of suggestions kept for each prefix.
+     * @return The books and authors whose title or full name starts with the prefix.
+     */
+    @Operation(summary = "Suggest books and authors", description = "Retrieve the books and authors whose title or full name " +
+            "starts with the given text (ignoring case and diacritics), the most read first. " +
+            "The limit cannot exceed the number of suggestions kept for each prefix (suggest.max-results, 10 by default).")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions retrieved successfully",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "suggestions": [
+                                      {
+                                        "type": "BOOK",
+                                        "id": "679cb334b477993c5cdc8b3d",
+                                        "text": "Effective Java"
+                                      },
+                                      {
+                                        "type": "AUTHOR",
+                                        "id": "679cb31ab477993c5cdc08da",
+                                        "text": "Eric Evans"
+                                      }
+                                    ]
+                                  },
+                                  "message": "Suggestions retrieved successfully",
+                                  "timestamp": "2025-02-09T17:22:58.8306423",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid prefix, or limit above the suggestions kept for each prefix",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/suggest")
+    public ResponseEntity<Map<String, Object>> suggest(
+            @Parameter(description = "The text typed so far.", example = "eff", required = true, in = ParameterIn.QUERY)
+            @RequestParam @NotBlank String prefix,
+
+            @Parameter(description = "Maximum number of suggestions, at most suggest.max-results (10 by default).",
+                    example = "10", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "10") @Min(1) int limit) {
+
+        List<SuggestionDTO> suggestions = suggestionService.suggest(prefix, limit);
+        return ApiResponseUtil.ok("Suggestions retrieved successfully", Map.of("suggestions", suggestions));
+    }
+
     /**
      * Get details of a specific book and optionally nearby libraries with the book.
      *
@@ -339,11 +457,17 @@ public class BookController {
      * @param latitude Optional latitude of the user for proximity search.
      * @param longitude Optional longitude of the user for proximity search.
      * @param radius Optional maximum distance (in meters) for proximity search.
+     * @param available Whether to keep only the nearby libraries with copies of the book.
+     * @param nearest Optional maximum number of nearby libraries, the nearest ones.
+     * @param liveAvailability Whether to include the live availability of each library.
      * @return The details of the requested book, represented as `BookDTO`.
      */
     @Operation(summary = "Get book details with optional library proximity search",
             description = "Retrieve details of a specific book by its ID. If latitude and longitude are provided, the response will include only libraries near that location. " +
-                    "An optional radius (in meters) can be specified for filtering libraries within that range; otherwise, a default of 50km is applied.")
+                    "An optional radius (in meters) can be specified for filtering libraries within that range; otherwise, a default of 50km is applied. " +
+                    "Nearby libraries are sorted by distance and include it; they can be limited to the ones with copies (available=true) " +
+                    "and to the nearest N (nearest=N). With liveAvailability=true each library also includes the copies that can be " +
+                    "reserved right now, read from Redis in a single call, which the availability filter then applies to.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Book details retrieved successfully",
                     content = @Content(
@@ -436,7 +560,17 @@ public class BookController {
             @Valid @ValidObjectId @PathVariable String id,
             @RequestParam(required = false) Double latitude,
             @RequestParam(required = false) Double longitude,
-            @RequestParam(required = false) Integer radius) {
+            @RequestParam(required = false) Integer radius,
+            @Parameter(description = "Keep only the libraries with copies of the book. Requires latitude and longitude.",
+                    example = "false", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "false") boolean available,
+            @Parameter(description = "Keep only this many libraries, the nearest ones. Requires latitude and longitude.",
+                    example = "5", in = ParameterIn.QUERY)
+            @RequestParam(required = false) @Min(1) @Max(100) Integer nearest,
+            @Parameter(description = "Add to each library the copies that can be reserved right now. With available=true, " +
+                    "libraries are then filtered on these copies.",
+                    example = "false", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "false") boolean liveAvailability) {
 
         logger.info("Fetching details for book with ID: {}", id);
 
@@ -450,14 +584,82 @@ public class BookController {
             throw new IllegalArgumentException("Radius can only be specified when both latitude and longitude are provided.");
         }
 
+        // Validation: Availability and nearest filters are allowed only if latitude & longitude are provided
+        if ((available || nearest != null) && (latitude == null || longitude == null)) {
+            throw new IllegalArgumentException("Available and nearest can only be specified when both latitude and longitude are provided.");
+        }
+
         // Delegate logic to the service
-        BookDTO book = bookService.getBookByIdWithLibraries(id, latitude, longitude, radius);
+        BookDTO book = bookService.getBookByIdWithLibraries(id, latitude, longitude, radius, available, nearest,
+                liveAvailability);
 
         logger.info("Book details and library availability retrieved for ID: {}", id);
         return ApiResponseUtil.ok("Book details retrieved successfully", book);
     }
 
 
+    /**
+     * Check the real availability of several books in several libraries at once.
+     *
+     * All the counts are read from Redis with a single call, so that list pages showing availability
+     * badges do not need one request per book and library.
+     *
+     * @param bookIds    The IDs of the books.
+     * @param libraryIds Optional IDs of the libraries; if omitted, the libraries holding any of the books.
+     * @return The availability matrix, with a row for each book and a column for each library.
+     */
+    @Operation(summary = "Check the availability of several books",
+            description = "Retrieve the copies that can be reserved right now of several books in several libraries. " +
+                    "If no library is specified, the libraries holding any of the books are used.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Availability retrieved successfully",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "bookIds": [
+                                      "679cb34ab477993c5cdd4f0f",
+                                      "679cb33db477993c5cdcdf9c"
+                                    ],
+                                    "libraryIds": [
+                                      "679cb364d125ba32463b9759",
+                                      "679cb364d125ba32463b9749"
+                                    ],
+                                    "copies": [
+                                      [2, 0],
+                                      [null, 5]
+                                    ]
+                                  },
+                                  "message": "Availability retrieved successfully",
+                                  "timestamp": "2025-02-09T17:22:58.8306423",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid or too many IDs",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/availability")
+    public ResponseEntity<Map<String, Object>> getBooksAvailability(
+            @Parameter(description = "The IDs of the books, comma-separated.", required = true, in = ParameterIn.QUERY)
+            @RequestParam @NotEmpty @Size(max = 100) List<@ValidObjectId String> bookIds,
+
+            @Parameter(description = "The IDs of the libraries, comma-separated. Optional.", in = ParameterIn.QUERY)
+            @RequestParam(required = false) @Size(max = 100) List<@ValidObjectId String> libraryIds) {
+
+        logger.info("Checking availability of {} books", bookIds.size());
+        AvailabilityMatrixDTO availability = bookService.getBooksAvailability(bookIds, libraryIds);
+        return ApiResponseUtil.ok("Availability retrieved successfully", availability);
+    }
+
     /**
      * Check the real availability of a specific book in a specific library.
      *
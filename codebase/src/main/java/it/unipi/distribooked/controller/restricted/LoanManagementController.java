@@ -1,6 +1,9 @@
 package it.unipi.distribooked.controller.restricted;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -15,16 +18,24 @@ import it.unipi.distribooked.service.LoanManagementService;
 import it.unipi.distribooked.service.UserService;
 import it.unipi.distribooked.utils.ApiResponseUtil;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import it.unipi.distribooked.validation.ValidObjectId;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 
@@ -46,6 +57,14 @@ public class LoanManagementController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final String NDJSON = MediaType.APPLICATION_NDJSON_VALUE;
+
+    // Number of entries scanned from Redis per round trip while streaming
+    private static final int STREAM_BATCH_SIZE = 500;
+
     /**
      * Converts a reservation into a loan when a user picks up the reserved book.
      *
@@ -131,11 +150,13 @@ public class LoanManagementController {
      * Retrieves a list of overdue loans for a specific library.
      *
      * @param libraryId The ID of the library to fetch overdue loans for.
+     * @param limit     The maximum number of loans to return, all of them if not set.
      * @return A list of overdue loans (book IDs and user IDs).
      */
     @GetMapping("/{libraryId}/overdue")
     @Operation(summary = "(ADMIN) Retrieve overdue loans in a library",
-            description = "Retrieves all overdue loans for a specific library.")
+            description = "Retrieves the overdue loans for a specific library, most overdue first. " +
+                    "Use the limit parameter to retrieve only the most overdue ones.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Overdue loans retrieved successfully.",
                     content = @Content(
@@ -174,9 +195,15 @@ public class LoanManagementController {
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @SecurityRequirement(name = "bearerAuth")
-    public ResponseEntity<Map<String, Object>> getOverdueLoans(@Valid @ValidObjectId @PathVariable String libraryId) {
-        logger.info("Fetching overdue loans for library ID: {}", libraryId);
-        List<OverdueLoanDTO> overdueLoans = loanManagementService.getOverdueLoans(libraryId);
+    public ResponseEntity<Map<String, Object>> getOverdueLoans(
+            @Valid @ValidObjectId @PathVariable String libraryId,
+            @Parameter(description = "If set, only the given number of most overdue loans is returned.",
+                    example = "10", in = ParameterIn.QUERY)
+            @RequestParam(required = false) @Min(1) @Max(1000) Integer limit) {
+        logger.info("Fetching overdue loans for library ID: {} (limit={})", libraryId, limit);
+        List<OverdueLoanDTO> overdueLoans = limit != null
+                ? loanManagementService.getMostOverdueLoans(libraryId, limit)
+                : loanManagementService.getOverdueLoans(libraryId);
         logger.info("Overdue loans retrieved successfully for library ID: {}", libraryId);
 
         return ApiResponseUtil.ok(
@@ -185,6 +212,69 @@ public class LoanManagementController {
         );
     }
 
+    /**
+     * Retrieves the loans of a specific library that are due within the next days.
+     *
+     * @param libraryId The ID of the library.
+     * @param days      The number of days from now.
+     * @return A list of loans due soon, ordered by due date.
+     */
+    @GetMapping("/{libraryId}/due-soon")
+    @Operation(summary = "(ADMIN) Retrieve loans due soon in a library",
+            description = "Retrieves the loans of a library that are due within the given number of days, soonest first.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Loans due soon retrieved successfully.",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "loans": [
+                                      {
+                                        "userId": "67a5269e68b78d7479d391a6",
+                                        "bookId": "679cb33db477993c5cdcdf9c",
+                                        "libraryId": "679cb364d125ba32463b9746",
+                                        "loanedAt": "2025-02-09T17:51:11.904",
+                                        "dueDate": "2025-03-11T17:51:11.904"
+                                      }
+                                    ]
+                                  },
+                                  "message": "Loans due soon retrieved successfully.",
+                                  "timestamp": "2025-03-08T10:12:41.6582558",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid number of days.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized access.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden – insufficient permissions.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<Map<String, Object>> getLoansDueSoon(
+            @Valid @ValidObjectId @PathVariable String libraryId,
+            @Parameter(description = "Number of days from now. Must be between 1 and 30.",
+                    example = "7", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "7") @Min(1) @Max(30) int days) {
+        logger.info("Fetching loans due within {} days for library ID: {}", days, libraryId);
+        List<LoanDTO> loans = loanManagementService.getLoansDueWithin(libraryId, days);
+        logger.info("Loans due soon retrieved successfully for library ID: {}", libraryId);
+
+        return ApiResponseUtil.ok(
+                "Loans due soon retrieved successfully.",
+                Map.of("loans", loans)
+        );
+    }
+
     /**
      * Get all loans for a specific library.
      *
@@ -304,6 +394,244 @@ public class LoanManagementController {
         );
     }
 
+    /**
+     * Get a page of the loans of a specific library, without loading the whole loans hash.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The cursor returned by the previous page, omitted for the first page.
+     * @param size      The approximate number of loans per page.
+     * @return A page of loans and the cursor to fetch the next one.
+     */
+    @GetMapping("/{libraryId}/loans/page")
+    @Operation(summary = "(ADMIN) Get a page of loans for a library",
+            description = "Retrieves the active loans of a library one page at a time. Pass back the returned " +
+                    "nextCursor to fetch the following page; a null nextCursor means there are no more loans. " +
+                    "Page sizes are approximate and a page may occasionally be empty while nextCursor is not null.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Loans page retrieved successfully.",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "loans": {
+                                      "content": [
+                                        {
+                                          "userId": "67a5269e68b78d7479d391a6",
+                                          "bookId": "679cb33db477993c5cdcdf9c",
+                                          "libraryId": "679cb364d125ba32463b9746",
+                                          "loanedAt": "2025-02-09T17:51:11.904",
+                                          "dueDate": "2025-03-11T17:51:11.9633414"
+                                        },
+                                        ...
+                                      ],
+                                      "nextCursor": "MTc5Mg"
+                                    }
+                                  },
+                                  "message": "Loans page retrieved successfully.",
+                                  "timestamp": "2025-02-09T17:51:41.6582558",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized access.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden – insufficient permissions.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<Map<String, Object>> getLoansPage(
+            @Valid @ValidObjectId @PathVariable String libraryId,
+            @Parameter(description = "Cursor returned by the previous page. Omit it to start from the first page.",
+                    in = ParameterIn.QUERY)
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Approximate number of loans per page. Must be between 1 and 500.",
+                    example = "100", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "100") @Min(1) @Max(500) int size) {
+        logger.info("Fetching loans page for library ID: {} (cursor={}, size={})", libraryId, cursor, size);
+        CursorPageDTO<LoanDTO> loans = loanManagementService.getLoansPage(libraryId, cursor, size);
+        logger.info("Loans page retrieved successfully for library ID: {}", libraryId);
+
+        return ApiResponseUtil.ok(
+                "Loans page retrieved successfully.",
+                Map.of("loans", loans)
+        );
+    }
+
+    /**
+     * Streams all the loans of a specific library as newline-delimited JSON.
+     *
+     * @param libraryId The ID of the library.
+     * @return A streaming response writing one loan per line.
+     */
+    @GetMapping(value = "/{libraryId}/loans/stream", produces = NDJSON)
+    @Operation(summary = "(ADMIN) Stream all loans for a library",
+            description = "Streams the active loans of a library as newline-delimited JSON, one loan per line. " +
+                    "Loans are written as soon as they are scanned, so memory usage does not depend on the number of loans.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Loans streamed successfully.",
+                    content = @Content(
+                            mediaType = NDJSON,
+                            schema = @Schema(implementation = LoanDTO.class)
+                    )
+            ),
+            @ApiResponse(responseCode = "401", description = "Unauthorized access.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden – insufficient permissions.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<StreamingResponseBody> streamLoans(@Valid @ValidObjectId @PathVariable String libraryId) {
+        logger.info("Streaming all loans for library ID: {}", libraryId);
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream);
+            loanManagementService.streamLoans(libraryId, STREAM_BATCH_SIZE, loan -> writeLine(out, loan));
+            out.flush();
+            logger.info("Loans streamed successfully for library ID: {}", libraryId);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Get a page of the reservations of a specific library, without loading the whole reservations hash.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The cursor returned by the previous page, omitted for the first page.
+     * @param size      The approximate number of reservations per page.
+     * @return A page of reservations and the cursor to fetch the next one.
+     */
+    @GetMapping("/{libraryId}/reservations/page")
+    @Operation(summary = "(ADMIN) Get a page of reservations for a library",
+            description = "Retrieves the active reservations of a library one page at a time. Pass back the returned " +
+                    "nextCursor to fetch the following page; a null nextCursor means there are no more reservations. " +
+                    "Page sizes are approximate and a page may occasionally be empty while nextCursor is not null.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservations page retrieved successfully.",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "reservations": {
+                                      "content": [
+                                        {
+                                          "userId": "67a5269e68b78d7479d391a6",
+                                          "bookId": "679cb33db477993c5cdcdf9c",
+                                          "libraryId": "679cb364d125ba32463b9746",
+                                          "reservedAt": "2025-02-09T17:48:41.337",
+                                          "expiresAt": "2025-02-12T17:48:41.4001696"
+                                        },
+                                        ...
+                                      ],
+                                      "nextCursor": null
+                                    }
+                                  },
+                                  "message": "Reservations page retrieved successfully.",
+                                  "timestamp": "2025-02-09T17:49:31.2201696",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Unauthorized access.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden – insufficient permissions.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<Map<String, Object>> getReservationsPage(
+            @Valid @ValidObjectId @PathVariable String libraryId,
+            @Parameter(description = "Cursor returned by the previous page. Omit it to start from the first page.",
+                    in = ParameterIn.QUERY)
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Approximate number of reservations per page. Must be between 1 and 500.",
+                    example = "100", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "100") @Min(1) @Max(500) int size) {
+        logger.info("Fetching reservations page for library ID: {} (cursor={}, size={})", libraryId, cursor, size);
+        CursorPageDTO<ReservationDTO> reservations = loanManagementService.getReservationsPage(libraryId, cursor, size);
+        logger.info("Reservations page retrieved successfully for library ID: {}", libraryId);
+
+        return ApiResponseUtil.ok(
+                "Reservations page retrieved successfully.",
+                Map.of("reservations", reservations)
+        );
+    }
+
+    /**
+     * Streams all the reservations of a specific library as newline-delimited JSON.
+     *
+     * @param libraryId The ID of the library.
+     * @return A streaming response writing one reservation per line.
+     */
+    @GetMapping(value = "/{libraryId}/reservations/stream", produces = NDJSON)
+    @Operation(summary = "(ADMIN) Stream all reservations for a library",
+            description = "Streams the active reservations of a library as newline-delimited JSON, one reservation per line. " +
+                    "Reservations are written as soon as they are scanned, so memory usage does not depend on the number of reservations.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Reservations streamed successfully.",
+                    content = @Content(
+                            mediaType = NDJSON,
+                            schema = @Schema(implementation = ReservationDTO.class)
+                    )
+            ),
+            @ApiResponse(responseCode = "401", description = "Unauthorized access.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Forbidden – insufficient permissions.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @SecurityRequirement(name = "bearerAuth")
+    public ResponseEntity<StreamingResponseBody> streamReservations(@Valid @ValidObjectId @PathVariable String libraryId) {
+        logger.info("Streaming all reservations for library ID: {}", libraryId);
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream);
+            loanManagementService.streamReservations(libraryId, STREAM_BATCH_SIZE, reservation -> writeLine(out, reservation));
+            out.flush();
+            logger.info("Reservations streamed successfully for library ID: {}", libraryId);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Writes a single entry as one line of newline-delimited JSON.
+     */
+    private void writeLine(OutputStream out, Object entry) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(entry));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Retrieves the list of books reserved and loaned by a user.
      *
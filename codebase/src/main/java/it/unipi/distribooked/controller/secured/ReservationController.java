@@ -7,6 +7,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import it.unipi.distribooked.dto.BatchReservationRequestDTO;
+import it.unipi.distribooked.dto.BatchReservationResultDTO;
 import it.unipi.distribooked.dto.EmbeddedBookSavedDTO;
 import it.unipi.distribooked.dto.ReservationDTO;
 import it.unipi.distribooked.dto.swagger.CreatedResponse;
@@ -28,6 +30,7 @@ import org.springframework.web.bind.annotation.*;
 import it.unipi.distribooked.validation.ValidObjectId;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -117,6 +120,82 @@ public class ReservationController {
     }
 
 
+    /**
+     * Reserves several books at once for the current user.
+     *
+     * @param request The books to reserve, each in a specific library.
+     * @return The outcome of each reservation, in the same order as the request.
+     */
+    @PostMapping("/reserve/batch")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Reserve several books",
+            description = "Allows a user to reserve up to " + BatchReservationRequestDTO.MAX_ITEMS + " books at once, " +
+                    "each in a specific library. Every item succeeds or fails independently and its outcome is reported " +
+                    "in the same order as the request.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Batch reservation processed.",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "results": [
+                                      {
+                                        "bookId": "679cb34ab477993c5cdd4f0f",
+                                        "libraryId": "679cb364d125ba32463b9759",
+                                        "reserved": true,
+                                        "reservation": {
+                                          "userId": "67a5269e68b78d7479d391a6",
+                                          "bookId": "679cb34ab477993c5cdd4f0f",
+                                          "libraryId": "679cb364d125ba32463b9759",
+                                          "reservedAt": "2025-02-09T16:11:37.092",
+                                          "expiresAt": "2025-02-09T16:15:56.292"
+                                        },
+                                        "error": null
+                                      },
+                                      {
+                                        "bookId": "679cb33db477993c5cdcdf9c",
+                                        "libraryId": "679cb364d125ba32463b9759",
+                                        "reserved": false,
+                                        "reservation": null,
+                                        "error": "Book CURRENTLY not available in selected library"
+                                      }
+                                    ]
+                                  },
+                                  "message": "Batch reservation processed: 1 of 2 books reserved.",
+                                  "timestamp": "2025-02-09T17:11:37.1561781",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid request: empty cart, too many books or invalid IDs.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Please login to access this resource.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges to access this resource.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    public ResponseEntity<Map<String, Object>> reserveBooks(@Valid @RequestBody BatchReservationRequestDTO request) {
+        String userId = securityUtils.getCurrentUserId(); // Extract the user ID from the token
+        logger.info("Reserving {} books for user ID: {}", request.getItems().size(), userId);
+
+        List<BatchReservationResultDTO> results = reservationService.reserveBooks(userId, request.getItems());
+
+        long reserved = results.stream().filter(BatchReservationResultDTO::isReserved).count();
+        logger.info("Batch reservation for user ID: {} completed: {} of {} books reserved", userId, reserved, results.size());
+        return ApiResponseUtil.ok(
+                "Batch reservation processed: " + reserved + " of " + results.size() + " books reserved.",
+                Map.of("results", results)
+        );
+    }
+
     /**
      * Cancels a book reservation for the current user.
      *
@@ -4,10 +4,13 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.dto.EmbeddedBookReadDTO;
 import it.unipi.distribooked.dto.EmbeddedBookSavedDTO;
 import it.unipi.distribooked.dto.UserActiveBookDTO;
@@ -17,6 +20,8 @@ import it.unipi.distribooked.dto.swagger.SuccessResponse;
 import it.unipi.distribooked.service.UserService;
 import it.unipi.distribooked.utils.ApiResponseUtil;
 import it.unipi.distribooked.utils.SecurityUtils;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +30,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -165,13 +171,14 @@ public class UserController {
     }
 
     /**
-     * Retrieves the list of books read by the current user.
+     * Retrieves the most recent books read by the current user.
      *
      * @return A list of read books.
      */
     @GetMapping("/read")
     @SecurityRequirement(name = "bearerAuth")
-    @Operation(summary = "Get read books", description = "Returns the list of books read by the current user.")
+    @Operation(summary = "Get read books", description = "Returns the most recent books read by the current user. " +
+            "The full reading history is available, one page at a time, at /api/v1/users/read/history.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Successfully retrieved read books.",
                     content = @Content(
@@ -228,6 +235,83 @@ public class UserController {
         );
     }
 
+    /**
+     * Retrieves a page of the full reading history of the current user.
+     *
+     * @param cursor The cursor returned by the previous page, omitted for the first page.
+     * @param size   The number of readings per page.
+     * @return A page of read books and the cursor to fetch the next one.
+     */
+    @GetMapping("/read/history")
+    @SecurityRequirement(name = "bearerAuth")
+    @Operation(summary = "Get reading history", description = "Returns the books read by the current user one page " +
+            "at a time, from the most recent one. Pass back the returned nextCursor to fetch the following page; " +
+            "a null nextCursor means there are no more readings.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Successfully retrieved the reading history.",
+                    content = @Content(
+                            schema = @Schema(
+                                    implementation = SuccessResponse.class
+                            ),
+                            examples = @ExampleObject(
+                                    value = """
+                                {
+                                  "data": {
+                                    "readBooks": {
+                                      "content": [
+                                        {
+                                          "id": "679cb33db477993c5cdcdf9c",
+                                          "title": "Der Tod in Venedig",
+                                          "authors": [
+                                            {
+                                              "id": "679cb31ab477993c5cdc08da",
+                                              "fullName": "Thomas Mann"
+                                            }
+                                          ],
+                                          "libraryId": "679cb364d125ba32463b9746",
+                                          "returnDate": "2025-02-09T16:55:26"
+                                        },
+                                        ...
+                                      ],
+                                      "nextCursor": "NjdhNTI2OWU2OGI3OGQ3NDc5ZDM5MWE2OjE3"
+                                    }
+                                  },
+                                  "message": "Reading history retrieved successfully.",
+                                  "timestamp": "2025-02-09T17:58:55.1401252",
+                                  "status": 200
+                                }
+                                """
+                            )
+                    )
+            ),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor or page size.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "401", description = "Please login to access this resource.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "403", description = "Insufficient privileges to access this resource.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "500", description = "Internal server error.",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    public ResponseEntity<Map<String, Object>> getReadingsHistory(
+            @Parameter(description = "Cursor returned by the previous page. Omit it to start from the most recent reading.",
+                    in = ParameterIn.QUERY)
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Number of readings per page. Must be between 1 and 100.",
+                    example = "20", in = ParameterIn.QUERY)
+            @RequestParam(defaultValue = "20") @Min(1) @Max(100) int size) {
+        String userId = securityUtils.getCurrentUserId();
+        logger.info("Fetching reading history for user: {} (cursor={}, size={})", userId, cursor, size);
+
+        CursorPageDTO<EmbeddedBookReadDTO> response = userService.getReadingsHistory(userId, cursor, size);
+
+        logger.info("Successfully retrieved reading history for user: {}", userId);
+        return ApiResponseUtil.ok(
+                "Reading history retrieved successfully.",
+                Map.of("readBooks", response)
+        );
+    }
+
     /**
      * Get the details of the current user.
      *
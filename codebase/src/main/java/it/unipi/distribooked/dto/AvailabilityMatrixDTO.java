@@ -0,0 +1,31 @@
+package it.unipi.distribooked.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) for the availability of several books in several libraries.
+ *
+ * The copies are a matrix with a row for each book and a column for each library, in the order
+ * of bookIds and libraryIds.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityMatrixDTO {
+
+    @Schema(description = "The IDs of the books, one for each row.", example = "[\"679cb34ab477993c5cdd4f0f\"]")
+    private List<String> bookIds;
+
+    @Schema(description = "The IDs of the libraries, one for each column.",
+            example = "[\"679cb364d125ba32463b9759\", \"679cb364d125ba32463b9749\"]")
+    private List<String> libraryIds;
+
+    @Schema(description = "The copies of each book that can be reserved right now in each library, " +
+            "null where the library does not hold the book.", example = "[[2, null]]")
+    private List<List<Integer>> copies;
+}
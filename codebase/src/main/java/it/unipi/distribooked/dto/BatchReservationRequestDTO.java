@@ -0,0 +1,43 @@
+package it.unipi.distribooked.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import it.unipi.distribooked.validation.ValidObjectId;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object (DTO) for reserving several books at once.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchReservationRequestDTO {
+
+    // A user cannot hold more than this number of reservations anyway
+    public static final int MAX_ITEMS = 5;
+
+    @Schema(description = "The books to reserve, each in a specific library.")
+    @NotEmpty(message = "At least one book must be reserved.")
+    @Size(max = MAX_ITEMS, message = "At most " + MAX_ITEMS + " books can be reserved at once.")
+    private List<@Valid Item> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        @Schema(description = "The ID of the book to reserve.", example = "679cb34ab477993c5cdd4f0f")
+        @ValidObjectId
+        private String bookId;
+
+        @Schema(description = "The ID of the library where the book is reserved.", example = "679cb364d125ba32463b9759")
+        @ValidObjectId
+        private String libraryId;
+    }
+}
@@ -0,0 +1,39 @@
+package it.unipi.distribooked.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of a single item of a batch reservation.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchReservationResultDTO {
+
+    @Schema(description = "The ID of the requested book.", example = "679cb34ab477993c5cdd4f0f")
+    private String bookId;
+
+    @Schema(description = "The ID of the requested library.", example = "679cb364d125ba32463b9759")
+    private String libraryId;
+
+    @Schema(description = "Whether the book was reserved.", example = "true")
+    private boolean reserved;
+
+    @Schema(description = "The reservation details, set only if the book was reserved.")
+    private ReservationDTO reservation;
+
+    @Schema(description = "The reason why the book was not reserved, set only on failure.",
+            example = "Book CURRENTLY not available in selected library")
+    private String error;
+
+    public static BatchReservationResultDTO reserved(ReservationDTO reservation) {
+        return new BatchReservationResultDTO(reservation.getBookId(), reservation.getLibraryId(), true, reservation, null);
+    }
+
+    public static BatchReservationResultDTO failed(String bookId, String libraryId, String error) {
+        return new BatchReservationResultDTO(bookId, libraryId, false, null, error);
+    }
+}
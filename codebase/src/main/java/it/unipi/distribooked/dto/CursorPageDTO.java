@@ -0,0 +1,21 @@
+package it.unipi.distribooked.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+    @Schema(description = "The entries contained in this page.")
+    private List<T> content;
+
+    @Schema(description = "Opaque token to pass back to fetch the next page, null when there are no more entries.",
+            example = "MTc5Mg")
+    private String nextCursor;
+}
@@ -1,5 +1,6 @@
 package it.unipi.distribooked.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -27,4 +28,19 @@ public class EmbeddedLibraryDTO {
 
     @Schema(description = "The number of copies available.", example = "5")
     private int numberOfCopies;
+
+    @Schema(description = "The distance in meters from the given position, only present when searching nearby libraries.",
+            example = "1250.4")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double distance;
+
+    @Schema(description = "The number of copies that can be reserved right now, only present when live availability is requested.",
+            example = "2")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer availableCopies;
+
+    public EmbeddedLibraryDTO(String id, String libraryName, double[] coordinates, String address, int numberOfCopies,
+                              Double distance) {
+        this(id, libraryName, coordinates, address, numberOfCopies, distance, null);
+    }
 }
@@ -0,0 +1,28 @@
+package it.unipi.distribooked.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object (DTO) for the suggestions of the search box.
+ *
+ * A suggestion is either a book, by title, or an author, by full name.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestionDTO {
+
+    public enum Type { BOOK, AUTHOR }
+
+    @Schema(description = "Whether the suggestion is a book or an author.", example = "BOOK")
+    private Type type;
+
+    @Schema(description = "ID of the book or author.", example = "679cb334b477993c5cdc8b3d")
+    private String id;
+
+    @Schema(description = "Title of the book or full name of the author.", example = "Effective Java")
+    private String text;
+}
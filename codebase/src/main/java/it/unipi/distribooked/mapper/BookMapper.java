@@ -25,6 +25,9 @@ public interface BookMapper {
     @Mapping(target = "id", source = "id", qualifiedByName = "bookObjectIdToString")
     BookCatalogueDTO toBookCatalogueDTO(EmbeddedBookView view);
 
+    @Mapping(target = "id", source = "id", qualifiedByName = "bookObjectIdToString")
+    BookCatalogueDTO toBookCatalogueDTO(Book book);
+
     @Mapping(target = "id", source = "id", qualifiedByName = "bookObjectIdToString")
     @Mapping(target = "branches", source = "branches", qualifiedByName = "embeddedLibraryToDTO")
     BookDTO toBookDTO(Book book);
@@ -82,7 +85,8 @@ public interface BookMapper {
                 library.getLibraryName(),
                 coordinates,
                 addressToString(library.getAddress()),
-                library.getNumberOfCopies()
+                library.getNumberOfCopies(),
+                library.getDistance()
         );
     }
 
@@ -34,6 +34,6 @@ public class Author {
 
     private String about; // A short biography of the author
 
-    private List<EmbeddedBookAuthor> books; // Embedded books written by the author
+    private List<EmbeddedBookAuthor> books; // First books written by the author, the full list is in author_books
 
 }
@@ -0,0 +1,32 @@
+package it.unipi.distribooked.model;
+
+import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * Represents a bucket of the books of an author in the MongoDB "author_books" collection.
+ * The author document only keeps the first books as a preview, while the full list is split into buckets
+ * holding a bounded number of books each, so that adding or paging books never scans an unbounded array.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "author_books")
+public class AuthorBooksBucket {
+
+    @Id
+    private ObjectId id; // Increasing with the creation time of the bucket
+
+    private ObjectId authorId; // The author the books belong to
+
+    private int count; // Number of books in the bucket
+
+    private List<EmbeddedBookAuthor> books; // Books in the order they were added
+}
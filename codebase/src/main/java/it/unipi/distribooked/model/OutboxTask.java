@@ -8,7 +8,6 @@ import lombok.NoArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Version;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -31,7 +30,8 @@ public class OutboxTask {
 
     private Map<String, Object> payload; // Data specific to the task
 
-    @Indexed // Indexing improves query performance when searching by status
+    private String sourceId; // Identifier of the record the task was created from (e.g. a stream record), unique if set
+
     private TaskStatus status; // Status of the task (PENDING, IN_PROGRESS, COMPLETED, FAILED)
 
     private int retryCount; // Number of retry attempts
@@ -42,6 +42,12 @@ public class OutboxTask {
 
     private LocalDateTime nextRetryAt; // Timestamp for the next retry attempt
 
+    private String leaseOwner; // Application instance that claimed the task for processing
+
+    private String leaseToken; // Identifies the claim that leased the task, among the claims of its owner
+
+    private LocalDateTime leaseExpiresAt; // Time after which the claim expires and the task can be claimed again
+
     private String errorMessage; // Error message in case of failure
 
     private String stackTrace; // Stack trace for debugging failures
@@ -72,7 +72,7 @@ public class User {
     @NonNull
     private Address address; // Subdocument for detailed address
 
-    private List<EmbeddedBookRead> readings; // List of books the user has read
+    private List<EmbeddedBookRead> readings; // Most recent books read by the user, the full history is in user_readings
 
     private double avgTravelDistance; // Average travel distance to borrow books
 
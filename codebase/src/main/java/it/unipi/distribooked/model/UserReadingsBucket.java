@@ -0,0 +1,32 @@
+package it.unipi.distribooked.model;
+
+import it.unipi.distribooked.model.embedded.EmbeddedBookRead;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.List;
+
+/**
+ * Represents a bucket of the reading history of a user in the MongoDB "user_readings" collection.
+ * The user document only keeps the most recent readings, while the full history is split into buckets
+ * holding a bounded number of readings each, so that neither document grows without limit.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "user_readings")
+public class UserReadingsBucket {
+
+    @Id
+    private ObjectId id; // Increasing with the creation time of the bucket
+
+    private ObjectId userId; // The user the readings belong to
+
+    private int count; // Number of readings in the bucket
+
+    private List<EmbeddedBookRead> readings; // Readings in the order they were added
+}
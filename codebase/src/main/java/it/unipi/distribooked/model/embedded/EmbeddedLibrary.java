@@ -30,4 +30,11 @@ public class EmbeddedLibrary {
     private Address address; // Physical address of the library
 
     private int numberOfCopies; // Number of copies available in the library
+
+    private Double distance; // Distance in meters from the center of a proximity search, never stored
+
+    public EmbeddedLibrary(ObjectId id, String libraryName, Map<String, Object> location, Address address,
+                           int numberOfCopies) {
+        this(id, libraryName, location, address, numberOfCopies, null);
+    }
 }
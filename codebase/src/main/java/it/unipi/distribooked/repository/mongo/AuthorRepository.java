@@ -23,7 +23,7 @@ public interface AuthorRepository extends MongoRepository<Author, ObjectId>, Cus
     // Spring Data MongoDB will automatically handle the query for findById(ObjectId)
 
     /**
-     * Retrieves an author by ID with a limited number of books (first 20 by default).
+     * Retrieves an author by ID with the first 20 books, the full list of books is paged from the author_books buckets.
      *
      * @param id The author's ID.
      * @return The author document with a limited list of books.
@@ -31,16 +31,6 @@ public interface AuthorRepository extends MongoRepository<Author, ObjectId>, Cus
     @Query(value = "{ '_id': ?0 }", fields = "{ 'books': { $slice: 20 }, 'fullName': 1, 'yearOfBirth': 1, 'yearOfDeath': 1, 'avatarUrl': 1, 'about': 1, 'totalBooks': 1 }")
     Optional<Author> findByIdWithLimitedBooks(ObjectId id);
 
-    /**
-     * Retrieves an author by ID with books paginated using $slice.
-     *
-     * @param id   The author's ID.
-     * @param skip The number of books to skip.
-     * @return The author document with a limited list of books starting from the offset.
-     */
-    @Query(value = "{ '_id': ?0 }", fields = "{ 'books': { $slice: [ ?1, 20 ] }, 'fullName': 1, 'totalBooks': 1 }")
-    Optional<Author> findByIdWithBooksSlice(ObjectId id, int skip);
-
 //    @Query(value = "{ '_id': ?0 }", fields = "{ 'books': 1 }")
 //    Page<EmbeddedBookAuthor> findBooksByAuthorId(ObjectId id, Pageable pageable);
 
@@ -54,26 +44,5 @@ public interface AuthorRepository extends MongoRepository<Author, ObjectId>, Cus
     @Query(value = "{ '_id': { $in: ?0 } }", fields = "{ 'fullName': 1 }")
     List<EmbeddedAuthorView> findAuthorsByIdsWithFields(List<ObjectId> ids);
 
-    /**
-     * Finds books by author name and book title using projection.
-     * <p>
-     * This query searches for authors with the given full name and then filters their embedded books
-     * to return only those whose title matches the specified value. It uses projection to return
-     * only the matched embedded books instead of full author documents.
-     * <p>
-     * This method uses a regex search on the embedded books' titles within each author document.
-     * Since the scope of this query is limited to the books of a single author, the regex-based
-     * filtering is manageable without significant performance concerns.
-     * <p>
-     * MongoDB efficiently optimizes this query if an index exists on `fullName`:
-     * 1. The query first uses the index on `fullName` to quickly find matching author documents.
-     * 2. For the matching documents, MongoDB scans the `books` array to find entries with a matching title.
-     * 3. The `$elemMatch` operator ensures that only the books matching the criteria are returned,
-     * reducing the amount of data transferred to the application.
-     */
-    @Query(value = "{ 'fullName': ?0, 'books.title': { $regex: ?1, $options: 'i' } }",
-            fields = "{ 'books': { $elemMatch: { 'title': { $regex: ?1, $options: 'i' } } } }")
-    Page<Author> findBooksByAuthorAndTitle(String fullName, String title, Pageable pageable);
-
 }
 
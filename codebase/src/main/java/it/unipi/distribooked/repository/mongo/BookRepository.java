@@ -4,21 +4,25 @@ import it.unipi.distribooked.model.Book;
 import it.unipi.distribooked.model.embedded.EmbeddedLibrary;
 import it.unipi.distribooked.repository.mongo.custom.CustomBookRepository;
 import it.unipi.distribooked.repository.mongo.views.BookCatalogueView;
+import it.unipi.distribooked.repository.mongo.views.BookTitleView;
 import it.unipi.distribooked.repository.mongo.views.LibraryCopiesView;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface BookRepository extends MongoRepository<Book, ObjectId>, CustomBookRepository {
 
-    Page<BookCatalogueView> findAllBy(Pageable pageable);
+    // Catalogue pages are returned as slices, i.e. without a count query, their total comes from CatalogueCountService
+    Slice<BookCatalogueView> findAllBy(Pageable pageable);
 
     /**
      * Performs a strict search by the entire book title.
@@ -32,9 +36,9 @@ public interface BookRepository extends MongoRepository<Book, ObjectId>, CustomB
 
     Optional<BookCatalogueView> findBookById(ObjectId id);
 
-    Page<BookCatalogueView> findByCategories(String category, Pageable pageable);
+    Slice<BookCatalogueView> findByCategories(String category, Pageable pageable);
 
-    Page<BookCatalogueView> findAllByOrderByReadingsCountDesc(Pageable pageable);
+    Slice<BookCatalogueView> findAllByOrderByReadingsCountDesc(Pageable pageable);
 
     @Query("{ '_id': ?0, 'branches': { $elemMatch: { '_id': ?1, 'numberOfCopies': { $gt: 0 } } } }")
     @Update("{ '$inc': { 'branches.$.numberOfCopies': -1 } }")
@@ -62,15 +66,16 @@ public interface BookRepository extends MongoRepository<Book, ObjectId>, CustomB
     @Update("{ '$inc': { 'branches.$.numberOfCopies': 1 } }")
     void incrementCopiesInLibrary(ObjectId bookId, ObjectId libraryId);
 
-    @Query(value = "{ '_id': ?0 }", fields = "{ 'title': 1, '_id': 0 }")
-    String findTitleById(String id);
+    /**
+     * Retrieves the titles of several books with a single query.
+     */
+    @Query(value = "{ '_id': { '$in': ?0 } }", fields = "{ 'title': 1 }")
+    List<BookTitleView> findTitlesByIdIn(Collection<ObjectId> ids);
 
-    @Query("{ '_id': ?0 }")
-    @Update("{ '$inc': { 'readingsCount': 1 } }")
-    long incrementReadingsCount(ObjectId bookId);
+    List<BookCatalogueView> findBooksByIdIn(Collection<ObjectId> ids);
 
     @Query(value = "{ 'categories': ?0 }", sort = "{ readingsCount: -1 }")
-    Page<BookCatalogueView> findBooksByCategoryOrderByReadingsCount(String category, Pageable pageable);
+    Slice<BookCatalogueView> findBooksByCategoryOrderByReadingsCount(String category, Pageable pageable);
 
     @Query(value = "{ 'title': ?0 }", collation = "{ 'locale': 'en', 'strength': 2, 'alternate': 'shifted' }")
     Page<BookCatalogueView> findByTitleWithCollation(String title, Pageable pageable);
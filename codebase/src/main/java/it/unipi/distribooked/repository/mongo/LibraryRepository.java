@@ -7,7 +7,10 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 import it.unipi.distribooked.repository.mongo.views.EmbeddedLibraryView;
+import it.unipi.distribooked.repository.mongo.views.LibraryNameView;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,6 +27,7 @@ public interface LibraryRepository extends MongoRepository<Library, ObjectId> {
     @Field("libraryName: '$name'")
     Optional<EmbeddedLibraryView> findLibraryViewById(ObjectId libraryId);
 
-    @Query(value = "{ '_id': ?0 }", fields = "{ 'name': 1, '_id': 0 }")
-    String findNameById(String id);
+    // Retrieves the names of several libraries with a single query
+    @Query(value = "{ '_id': { '$in': ?0 } }", fields = "{ 'name': 1 }")
+    List<LibraryNameView> findNamesByIdIn(Collection<ObjectId> ids);
 }
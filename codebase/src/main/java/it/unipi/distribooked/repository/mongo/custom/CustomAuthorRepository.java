@@ -1,20 +1,33 @@
 package it.unipi.distribooked.repository.mongo.custom;
 
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
 import org.bson.types.ObjectId;
 
+
 /**
  * Custom repository interface for advanced Author operations.
- * Provides a method for atomically updating an author's embedded books.
+ * Provides the methods managing the books of an author, stored in bucket documents.
  */
 public interface CustomAuthorRepository {
 
     /**
-     * Atomically adds a book to an author's embedded books if not already present.
+     * Atomically adds a book to an author's books if not already present.
      *
      * @param authorId The ID of the author to update.
-     * @param book     The book to add to the embedded books.
+     * @param book     The book to add to the author's books.
      * @return true if the book was added, false if it was already present.
      */
     boolean updateAuthorWithBook(ObjectId authorId, EmbeddedBookAuthor book);
+
+    /**
+     * Retrieves a page of the books of an author, in the order they were added.
+     *
+     * @param authorId The ID of the author.
+     * @param cursor   The opaque cursor returned by the previous page, or null for the first page.
+     * @param size     The number of books per page.
+     * @return The page of books and the cursor of the next page (null when there are no more books).
+     * @throws IllegalArgumentException if the cursor is not valid.
+     */
+    CursorPageDTO<EmbeddedBookAuthor> findAuthorBooks(ObjectId authorId, String cursor, int size);
 }
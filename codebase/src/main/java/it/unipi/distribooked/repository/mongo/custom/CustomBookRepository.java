@@ -1,18 +1,81 @@
 package it.unipi.distribooked.repository.mongo.custom;
 
 import it.unipi.distribooked.dto.BookUtilizationDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.model.Book;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
 public interface CustomBookRepository {
 
-    Book findBookWithNearbyLibraries(ObjectId bookId, double longitude, double latitude, Integer maxDistance);
+    /**
+     * A change in the number of copies of a book in a library.
+     */
+    record CopyDelta(ObjectId bookId, ObjectId libraryId, int delta) {}
+
+    Book findBookWithNearbyLibraries(ObjectId bookId, double longitude, double latitude, Integer maxDistance,
+                                     boolean availableOnly, Integer limit);
 
     Map<String, List<BookUtilizationDTO>> findBooksUtilization();
 
-}
+    /**
+     * Reads the number of copies of several books in each of their libraries, with a single query.
+     *
+     * @param bookIds The IDs of the books.
+     * @return For each book found, the number of copies by library ID.
+     */
+    Map<ObjectId, Map<ObjectId, Integer>> findCopiesByLibrary(Collection<ObjectId> bookIds);
+
+    /**
+     * Applies several changes in the number of copies with a single unordered bulkWrite.
+     * A change only applies if the library is a branch of the book and the resulting number of copies
+     * is not negative.
+     *
+     * @param deltas The changes to apply, at most one per (book, library).
+     * @return The number of changes that applied.
+     */
+    int applyCopyDeltas(List<CopyDelta> deltas);
+
+    /**
+     * Increments the readings count of several books with a single unordered bulkWrite.
+     *
+     * @param incrementsByBook The increment of each book.
+     */
+    void incrementReadingsCounts(Map<ObjectId, Integer> incrementsByBook);
 
+    /**
+     * Retrieves a page of the catalogue with keyset pagination: each page starts right after the last book of
+     * the previous one, identified by the cursor, so deep pages cost the same as the first one and no count
+     * query is needed.
+     * Books are sorted by _id, or by (readingsCount desc, _id) when sorting by popularity.
+     *
+     * @param category       The category to filter by, or null for the whole catalogue.
+     * @param byPopularity   Whether to sort the books by popularity.
+     * @param cursor         The opaque cursor returned by the previous page, or null for the first page.
+     * @param size           The number of books per page.
+     * @return The page of books, with the catalogue fields only, and the cursor of the next page
+     *         (null when there are no more books).
+     * @throws IllegalArgumentException if the cursor is not valid for the requested sort.
+     */
+    CursorPageDTO<Book> findCataloguePage(String category, boolean byPopularity, String cursor, int size);
+
+    /**
+     * Searches the catalogue by title, served by indexes only:
+     * - full-text: books whose title or author names contain any of the words, ranked by relevance;
+     * - prefix: books whose title starts with the given text, case-insensitively, sorted by title.
+     *
+     * @param text     The words, or the beginning of the title, to search for.
+     * @param author   Optional full name of an author of the books.
+     * @param prefix   Whether to match the beginning of the title instead of words.
+     * @param pageable The page of matching books to return.
+     * @return The page of matching books, with the catalogue fields only.
+     */
+    Page<Book> searchBooks(String text, String author, boolean prefix, Pageable pageable);
+
+}
@@ -0,0 +1,50 @@
+package it.unipi.distribooked.repository.mongo.custom;
+
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import org.bson.types.ObjectId;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Custom repository interface for Outbox-related operations.
+ */
+public interface CustomOutboxRepository {
+
+    /**
+     * Inserts several tasks with a single unordered insertMany.
+     * Tasks whose sourceId is already present in the collection are skipped, so that the same
+     * source record cannot produce two tasks.
+     *
+     * @param tasks The tasks to insert.
+     * @return The number of tasks actually inserted.
+     */
+    int insertAllIgnoringDuplicates(List<OutboxTask> tasks);
+
+    /**
+     * Atomically claims up to limit processable tasks of the given types for the given owner, earliest retry
+     * time first, then in creation order. A task is processable if it is pending, or scheduled for retry, and
+     * due, or if the lease of its previous owner expired; the retryCount of the latter is incremented, as the
+     * expired lease is a failed attempt. Claimed tasks are IN_PROGRESS and leased until now + leaseDuration. The tasks are claimed together with a single update, in a constant number of
+     * round trips whatever the limit; fewer than limit tasks may be returned if other instances claim some
+     * of them at the same time.
+     *
+     * @param owner         The identifier of the application instance claiming the tasks.
+     * @param types         The types of the tasks to claim.
+     * @param limit         The maximum number of tasks to claim.
+     * @param leaseDuration How long the claimed tasks are reserved to the owner.
+     * @return The claimed tasks, as updated by the claim.
+     */
+    List<OutboxTask> leaseTasks(String owner, Collection<OutboxTaskType> types, int limit, Duration leaseDuration);
+
+    /**
+     * Marks several tasks leased by the given owner as completed, with a single update.
+     *
+     * @param ids   The IDs of the tasks.
+     * @param owner The identifier of the application instance that leased the tasks.
+     * @return The number of tasks completed, lower than the number of IDs if some lease was lost.
+     */
+    long completeTasks(Collection<ObjectId> ids, String owner);
+}
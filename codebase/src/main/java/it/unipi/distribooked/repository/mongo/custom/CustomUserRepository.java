@@ -1,17 +1,25 @@
 package it.unipi.distribooked.repository.mongo.custom;
 
 import it.unipi.distribooked.dto.BooksByAgeGroupDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.model.embedded.EmbeddedBookRead;
 import it.unipi.distribooked.model.embedded.EmbeddedBookSaved;
 import org.bson.types.ObjectId;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Custom repository interface for User-related operations.
  */
 public interface CustomUserRepository {
+
+    /**
+     * A book read by a user.
+     */
+    record ReadBook(ObjectId userId, EmbeddedBookRead bookRead) {}
+
     /**
      * Removes a saved book for the user by its ID.
      *
@@ -23,7 +31,27 @@ public interface CustomUserRepository {
 
     long saveBook(String userId, EmbeddedBookSaved bookToSave);
 
-    boolean addReadBook(ObjectId userId, EmbeddedBookRead bookRead);
+    /**
+     * Adds several read books to the recent readings of their users and to their reading history buckets,
+     * with one bulkWrite on each collection.
+     *
+     * @param readBooks The read books, each with the ID of its user.
+     * @return The IDs of the users that were not found, whose read books were not added.
+     * @throws org.springframework.dao.DuplicateKeyException If a history bucket of one of the users was opened
+     *         concurrently; the whole call has to be retried.
+     */
+    Set<ObjectId> addReadBooks(List<ReadBook> readBooks);
+
+    /**
+     * Retrieves a page of the full reading history of a user, from the most recent reading.
+     *
+     * @param userId The ID of the user.
+     * @param cursor The opaque cursor returned by the previous page, or null for the first page.
+     * @param size   The number of readings per page.
+     * @return The page of readings and the cursor of the next page (null when the history is over).
+     * @throws IllegalArgumentException if the cursor is not valid.
+     */
+    CursorPageDTO<EmbeddedBookRead> findReadingsHistory(ObjectId userId, String cursor, int size);
 
     List<BooksByAgeGroupDTO> findMostReadBooksByAgeGroup(String startDate, String endDate);
 
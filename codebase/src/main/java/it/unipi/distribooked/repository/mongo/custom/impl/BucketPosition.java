@@ -0,0 +1,35 @@
+package it.unipi.distribooked.repository.mongo.custom.impl;
+
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a list split into bucket documents: the bucket and the index, within it, of the next entry.
+ * Encoded into the opaque cursor handed to clients by the keyset-paginated endpoints.
+ */
+record BucketPosition(ObjectId bucketId, int index) {
+
+    String encode() {
+        String rawCursor = bucketId.toHexString() + ":" + index;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(rawCursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes an opaque cursor token back into a position, null (i.e. the beginning) if none is given.
+     *
+     * @throws IllegalArgumentException if the token is not a valid cursor.
+     */
+    static BucketPosition decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] rawCursor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            return new BucketPosition(new ObjectId(rawCursor[0]), Integer.parseInt(rawCursor[1]));
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
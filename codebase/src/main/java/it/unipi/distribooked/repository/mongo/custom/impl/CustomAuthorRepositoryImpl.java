@@ -1,52 +1,151 @@
 package it.unipi.distribooked.repository.mongo.custom.impl;
 
-import com.mongodb.client.result.UpdateResult;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.model.Author;
+import it.unipi.distribooked.model.AuthorBooksBucket;
 import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
 import it.unipi.distribooked.repository.mongo.custom.CustomAuthorRepository;
+import jakarta.annotation.PostConstruct;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Implementation of the CustomAuthorRepository interface.
- * Provides the logic for updating an author's embedded books atomically.
+ * Provides the logic for adding, paging and searching the books of an author, stored in bucket documents.
  */
 @Repository
 public class CustomAuthorRepositoryImpl implements CustomAuthorRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(CustomAuthorRepositoryImpl.class);
 
+    private static final int BOOKS_PREVIEW_SIZE = 20; // Books kept in the author document, returned with its details
+
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Value("${authors.books-bucket-size:100}")
+    private int booksBucketSize; // Books per bucket of the author_books collection
+
+    @Autowired
+    private MongoTransactionManager transactionManager; // Used to update a bucket and its author together
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        ensureIndexes();
+    }
+
+    /**
+     * Creates the indexes of the author books collection:
+     * - by author and bucket, used to append books to the last bucket and to page through the books;
+     * - the uniqueness of a book among the buckets of an author, on which the idempotency of
+     *   updateAuthorWithBook relies, without scanning the books already added.
+     */
+    private void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(AuthorBooksBucket.class);
+
+        indexOps.ensureIndex(new Index()
+                .on("authorId", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .named("authorId_id"));
+
+        indexOps.ensureIndex(new Index()
+                .on("authorId", Sort.Direction.ASC)
+                .on("books._id", Sort.Direction.ASC)
+                .unique()
+                .named("authorId_bookId_unique"));
+    }
+
     @Override
     public boolean updateAuthorWithBook(ObjectId authorId, EmbeddedBookAuthor book) {
-        // Build the query to find the author and check if the book is not already present
-        Query query = new Query(Criteria.where("_id").is(authorId)
-                .and("books._id").ne(book.getId())); // Ensure the book is not already in the list
+        if (!mongoTemplate.exists(new Query(Criteria.where("_id").is(authorId)), Author.class)) {
+            logger.debug("Author {} not found, book {} not added", authorId, book.getId());
+            return false;
+        }
 
-        // Define the update operation to add the book and increment the totalBooks counter
+        // Append the book to the last bucket of the author, a new bucket is created when it is full.
+        // If the book was already added, to this or to another bucket, the unique index rejects the write.
+        Query lastBucket = new Query(Criteria.where("authorId").is(authorId)
+                .and("count").lt(booksBucketSize)
+                .and("books._id").ne(book.getId())); // Bounded by the bucket size
         Update update = new Update()
-                .push("books", book) // Add the book to the embedded array
-                .inc("totalBooks", 1); // Increment the totalBooks counter
+                .push("books", book)
+                .inc("count", 1);
 
-        // Execute the atomic update
-        UpdateResult result = mongoTemplate.updateFirst(query, update, Author.class);
+        // Both writes run in one transaction, so a failure between them cannot leave the book in a bucket
+        // without the author update, which a retry would then skip because of the unique index.
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                mongoTemplate.upsert(lastBucket, update, AuthorBooksBucket.class);
 
-        // Log the result and return true if the update modified a document
-        if (result.getModifiedCount() > 0) {
-            logger.debug("Successfully added book {} to author {}", book.getId(), authorId);
-            return true;
-        } else {
+                // Keep the first books in the author document and increment the totalBooks counter
+                mongoTemplate.updateFirst(
+                        new Query(Criteria.where("_id").is(authorId)),
+                        new Update()
+                                .inc("totalBooks", 1)
+                                .push("books").slice(BOOKS_PREVIEW_SIZE).each(book),
+                        Author.class);
+            });
+        } catch (DuplicateKeyException e) {
             logger.debug("Book {} is already present for author {}", book.getId(), authorId);
             return false;
         }
+
+        logger.debug("Successfully added book {} to author {}", book.getId(), authorId);
+        return true;
+    }
+
+    @Override
+    public CursorPageDTO<EmbeddedBookAuthor> findAuthorBooks(ObjectId authorId, String cursor, int size) {
+        BucketPosition position = BucketPosition.decode(cursor);
+
+        // Buckets from the first one, starting from the bucket of the cursor
+        Query query = new Query(Criteria.where("authorId").is(authorId))
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .cursorBatchSize(size / booksBucketSize + 2);
+        if (position != null) {
+            query.addCriteria(Criteria.where("_id").gte(position.bucketId()));
+        }
+
+        List<EmbeddedBookAuthor> books = new ArrayList<>(size);
+        try (Stream<AuthorBooksBucket> buckets = mongoTemplate.stream(query, AuthorBooksBucket.class)) {
+            Iterator<AuthorBooksBucket> iterator = buckets.iterator();
+            while (iterator.hasNext()) {
+                AuthorBooksBucket bucket = iterator.next();
+                List<EmbeddedBookAuthor> bucketBooks = bucket.getBooks();
+
+                int index = position != null && bucket.getId().equals(position.bucketId())
+                        ? Math.max(position.index(), 0)
+                        : 0;
+                for (; index < bucketBooks.size(); index++) {
+                    if (books.size() == size) {
+                        return new CursorPageDTO<>(books, new BucketPosition(bucket.getId(), index).encode());
+                    }
+                    books.add(bucketBooks.get(index));
+                }
+            }
+        }
+        return new CursorPageDTO<>(books, null);
     }
 }
@@ -1,9 +1,11 @@
 package it.unipi.distribooked.repository.mongo.custom.impl;
 
 import it.unipi.distribooked.dto.BookUtilizationDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.model.Book;
 import it.unipi.distribooked.repository.mongo.custom.CustomBookRepository;
 import it.unipi.distribooked.repository.mongo.views.BookCatalogueView;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.types.ObjectId;
@@ -12,17 +14,22 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
-import org.springframework.data.geo.Circle;
-import org.springframework.data.geo.Distance;
-import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.*;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
 import org.springframework.data.mongodb.core.query.Collation;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.redis.domain.geo.Metrics;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Repository;
 
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -35,73 +42,139 @@ public class CustomBookRepositoryImpl implements CustomBookRepository {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    private static final double EARTH_RADIUS_METERS = 6378137; // equatorial radius
+
+    // Case-insensitive comparison of titles, also ignoring spaces and punctuation
+    private static final Collation TITLE_COLLATION = Collation.of("en")
+            .strength(Collation.ComparisonLevel.secondary())
+            .alternate(Collation.Alternate.shifted());
+
     /**
-     * Finds a book by its ID and filters the embedded "branches" array to include only nearby libraries
-     * within the specified maximum distance using $geoWithin.
-     * Uses a projection interface for optimized data retrieval when no nearby libraries are found.
+     * Creates the indexes backing the catalogue pages, both keyset and offset ones: each one matches
+     * a filter (none or category) and a sort (_id or readingsCount desc, _id).
+     * Also creates the indexes backing the search: a text index on titles and author names, and a title
+     * index with the collation of the title lookups, for prefix searches.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(Book.class);
+
+        indexOps.ensureIndex(new Index()
+                .on("readingsCount", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.ASC)
+                .named("readingsCount_id"));
+
+        indexOps.ensureIndex(new Index()
+                .on("categories", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .named("categories_id"));
+
+        indexOps.ensureIndex(new Index()
+                .on("categories", Sort.Direction.ASC)
+                .on("readingsCount", Sort.Direction.DESC)
+                .on("_id", Sort.Direction.ASC)
+                .named("categories_readingsCount_id"));
+
+        // No language, the catalogue is multilingual: words are neither stemmed nor dropped as stop words
+        indexOps.ensureIndex(new TextIndexDefinition.TextIndexDefinitionBuilder()
+                .onField("title", 3F)
+                .onField("authors.fullName")
+                .withDefaultLanguage("none")
+                .named("title_authors_text")
+                .build());
+
+        indexOps.ensureIndex(new Index()
+                .on("title", Sort.Direction.ASC)
+                .collation(TITLE_COLLATION)
+                .named("title_collation"));
+    }
+
+    /**
+     * Finds a book by its ID, keeping in the embedded "branches" array only the libraries within the specified
+     * maximum distance, sorted by distance, each with its distance from the search center.
+     *
+     * The book is matched by _id, so the distances of its few branches are computed in the same aggregation
+     * (haversine formula) rather than through the 2dsphere index, which would have to scan the branches of
+     * all the books around the search center. A book without nearby libraries is returned with empty branches.
      *
      * @param bookId The ObjectId of the book to find
      * @param longitude The longitude of the search center point
      * @param latitude The latitude of the search center point
      * @param maxDistance The maximum distance in meters (defaults to 50000 if null)
-     * @return Book object with either nearby libraries or empty branches list
+     * @param availableOnly Whether to keep only the libraries with copies of the book
+     * @param limit The maximum number of libraries to keep, the nearest ones, or null for all of them
+     * @return Book object with the nearby libraries, or null if the book does not exist
      */
     @Override
-    public Book findBookWithNearbyLibraries(ObjectId bookId, double longitude, double latitude, Integer maxDistance) {
+    public Book findBookWithNearbyLibraries(ObjectId bookId, double longitude, double latitude, Integer maxDistance,
+                                            boolean availableOnly, Integer limit) {
         double searchRadius = (maxDistance != null) ? maxDistance : 50000;
-        Point point = new Point(longitude, latitude);
-        Circle circle = new Circle(point, new Distance(searchRadius, Metrics.METERS));
 
-        // Try to find the book with nearby libraries using aggregation
+        // Branches without a location have a null distance, which fails the $gte
+        List<Document> conditions = new ArrayList<>(List.of(
+                new Document("$gte", List.of("$$branch.distance", 0)),
+                new Document("$lte", List.of("$$branch.distance", searchRadius))));
+        if (availableOnly) {
+            conditions.add(new Document("$gt", List.of("$$branch.numberOfCopies", 0)));
+        }
+
+        Document branchesWithDistance = new Document("$map", new Document()
+                .append("input", new Document("$ifNull", List.of("$branches", List.of())))
+                .append("as", "branch")
+                .append("in", new Document("$mergeObjects", List.of("$$branch",
+                        new Document("distance", distanceFrom(longitude, latitude, "$$branch.location.coordinates"))))));
+
+        Object nearbyBranches = new Document("$sortArray", new Document()
+                .append("input", new Document("$filter", new Document()
+                        .append("input", branchesWithDistance)
+                        .append("as", "branch")
+                        .append("cond", new Document("$and", conditions))))
+                .append("sortBy", new Document("distance", 1)));
+        if (limit != null) {
+            nearbyBranches = new Document("$slice", List.of(nearbyBranches, limit));
+        }
+
+        Document projection = new Document();
+        for (String field : List.of("title", "subtitle", "publicationDate", "publisher", "language", "categories",
+                "isbn10", "isbn13", "coverImageUrl", "authors", "readingsCount")) {
+            projection.append(field, 1);
+        }
+        projection.append("branches", nearbyBranches);
+
         Aggregation aggregation = Aggregation.newAggregation(
                 match(Criteria.where("_id").is(bookId)),
-                Aggregation.unwind("branches", true),
-                match(Criteria.where("branches.location").withinSphere(circle)),
-                Aggregation.group("_id")
-                        .first("title").as("title")
-                        .first("subtitle").as("subtitle")
-                        .first("publicationDate").as("publicationDate")
-                        .first("publisher").as("publisher")
-                        .first("language").as("language")
-                        .first("categories").as("categories")
-                        .first("isbn10").as("isbn10")
-                        .first("isbn13").as("isbn13")
-                        .first("coverImageUrl").as("coverImageUrl")
-                        .first("authors").as("authors")
-                        .push("branches").as("branches")
+                context -> new Document("$project", projection)
         );
 
         List<Book> results = mongoTemplate.aggregate(aggregation, "books", Book.class).getMappedResults();
+        return results.isEmpty() ? null : results.get(0);
+    }
 
-        if (!results.isEmpty()) {
-            return results.get(0);
-        }
-
-        // If no nearby libraries found, get only the book details using projection
-        Query query = new Query(Criteria.where("_id").is(bookId));
-        query.fields()
-                .include("id")
-                .include("title")
-                .include("subtitle")
-                .include("publicationDate")
-                .include("publisher")
-                .include("language")
-                .include("categories")
-                .include("isbn10")
-                .include("isbn13")
-                .include("coverImageUrl")
-                .include("authors")
-                .include("readingsCount");
-
-        Book bookDetails = mongoTemplate.findOne(query, Book.class, "books");
-
-        if (bookDetails == null) {
-            return null;
-        }
+    /**
+     * Builds the expression of the great-circle distance, in meters, between a point and the GeoJSON
+     * coordinates ([longitude, latitude]) found at the given path.
+     */
+    private static Document distanceFrom(double longitude, double latitude, String coordinatesPath) {
+        Document branchLongitude = new Document("$degreesToRadians", new Document("$arrayElemAt", List.of(coordinatesPath, 0)));
+        Document branchLatitude = new Document("$degreesToRadians", new Document("$arrayElemAt", List.of(coordinatesPath, 1)));
+        double centerLongitude = Math.toRadians(longitude);
+        double centerLatitude = Math.toRadians(latitude);
 
-        // Set empty branches and return
-        bookDetails.setBranches(List.of());
-        return bookDetails;
+        // haversine = sin²(Δlatitude / 2) + cos(latitude1) * cos(latitude2) * sin²(Δlongitude / 2)
+        Document haversine = new Document("$add", List.of(
+                squaredSinOfHalf(new Document("$subtract", List.of(branchLatitude, centerLatitude))),
+                new Document("$multiply", List.of(
+                        Math.cos(centerLatitude),
+                        new Document("$cos", branchLatitude),
+                        squaredSinOfHalf(new Document("$subtract", List.of(branchLongitude, centerLongitude)))))));
+
+        // distance = 2R * asin(sqrt(haversine)), with haversine capped at 1 against rounding errors
+        return new Document("$multiply", List.of(2 * EARTH_RADIUS_METERS,
+                new Document("$asin", new Document("$sqrt", new Document("$min", List.of(haversine, 1))))));
+    }
+
+    private static Document squaredSinOfHalf(Document angle) {
+        return new Document("$pow", List.of(new Document("$sin", new Document("$divide", List.of(angle, 2))), 2));
     }
 
     @Override
@@ -217,4 +290,142 @@ public class CustomBookRepositoryImpl implements CustomBookRepository {
                 .collect(Collectors.toList()); // Collect mapped DTOs into a list
     }
 
-}
\ No newline at end of file
+    @Override
+    public Map<ObjectId, Map<ObjectId, Integer>> findCopiesByLibrary(Collection<ObjectId> bookIds) {
+        Query query = new Query(Criteria.where("_id").in(bookIds));
+        query.fields().include("branches._id").include("branches.numberOfCopies");
+
+        Map<ObjectId, Map<ObjectId, Integer>> copies = new HashMap<>();
+        for (Book book : mongoTemplate.find(query, Book.class)) {
+            Map<ObjectId, Integer> byLibrary = new HashMap<>();
+            if (book.getBranches() != null) {
+                book.getBranches().forEach(branch -> byLibrary.put(branch.getId(), branch.getNumberOfCopies()));
+            }
+            copies.put(book.getId(), byLibrary);
+        }
+        return copies;
+    }
+
+    @Override
+    public int applyCopyDeltas(List<CopyDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+        for (CopyDelta delta : deltas) {
+            // same guard as decrementCopiesInLibraryIfAvailable: copies never go below zero
+            Query query = new Query(Criteria.where("_id").is(delta.bookId())
+                    .and("branches").elemMatch(Criteria.where("_id").is(delta.libraryId())
+                            .and("numberOfCopies").gte(Math.max(0, -delta.delta()))));
+            bulkOps.updateOne(query, new Update().inc("branches.$.numberOfCopies", delta.delta()));
+        }
+
+        return bulkOps.execute().getMatchedCount();
+    }
+
+    @Override
+    public void incrementReadingsCounts(Map<ObjectId, Integer> incrementsByBook) {
+        if (incrementsByBook.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Book.class);
+        incrementsByBook.forEach((bookId, increment) -> bulkOps.updateOne(
+                new Query(Criteria.where("_id").is(bookId)),
+                new Update().inc("readingsCount", increment)));
+        bulkOps.execute();
+    }
+
+    @Override
+    public CursorPageDTO<Book> findCataloguePage(String category, boolean byPopularity, String cursor, int size) {
+        Query query = new Query();
+        if (category != null) {
+            query.addCriteria(Criteria.where("categories").is(category));
+        }
+
+        // Seek past the last book of the previous page
+        Book after = decodeCatalogueCursor(cursor, byPopularity);
+        if (after != null && byPopularity) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("readingsCount").lt(after.getReadingsCount()),
+                    Criteria.where("readingsCount").is(after.getReadingsCount()).and("_id").gt(after.getId())));
+        } else if (after != null) {
+            query.addCriteria(Criteria.where("_id").gt(after.getId()));
+        }
+
+        query.with(byPopularity
+                ? Sort.by(Sort.Order.desc("readingsCount"), Sort.Order.asc("_id"))
+                : Sort.by(Sort.Order.asc("_id")));
+        query.limit(size + 1); // one more book tells whether there is a next page
+        query.fields().include("title", "subtitle", "authors", "categories", "coverImageUrl", "readingsCount");
+
+        List<Book> books = mongoTemplate.find(query, Book.class);
+        if (books.size() <= size) {
+            return new CursorPageDTO<>(books, null);
+        }
+
+        List<Book> page = books.subList(0, size);
+        return new CursorPageDTO<>(page, encodeCatalogueCursor(page.get(size - 1), byPopularity));
+    }
+
+    @Override
+    public Page<Book> searchBooks(String text, String author, boolean prefix, Pageable pageable) {
+        Query query;
+        if (prefix) {
+            // U+FFFF sorts after any character, so the range holds exactly the titles starting with the text
+            query = new Query(Criteria.where("title").gte(text).lt(text + "\uffff"))
+                    .collation(TITLE_COLLATION)
+                    .with(Sort.by(Sort.Direction.ASC, "title"));
+        } else {
+            query = TextQuery.queryText(TextCriteria.forLanguage("none").matching(text)).sortByScore();
+        }
+        if (author != null) {
+            query.addCriteria(Criteria.where("authors.fullName").is(author));
+        }
+
+        Query countQuery = Query.of(query);
+        query.with(pageable);
+        query.fields().include("title", "subtitle", "authors", "categories", "coverImageUrl");
+
+        List<Book> books = mongoTemplate.find(query, Book.class);
+        return PageableExecutionUtils.getPage(books, pageable, () -> mongoTemplate.count(countQuery, Book.class));
+    }
+
+    /**
+     * Encodes the sort key of the last book of a page into the opaque token handed to clients.
+     */
+    private static String encodeCatalogueCursor(Book last, boolean byPopularity) {
+        String rawCursor = byPopularity
+                ? last.getReadingsCount() + ":" + last.getId().toHexString()
+                : last.getId().toHexString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(rawCursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes an opaque cursor token back into the sort key of the last book of the previous page,
+     * starting from the first page if none is given.
+     *
+     * @throws IllegalArgumentException if the token is not a valid cursor for the requested sort.
+     */
+    private static Book decodeCatalogueCursor(String cursor, boolean byPopularity) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String[] rawCursor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if (rawCursor.length != (byPopularity ? 2 : 1)) {
+                throw new IllegalArgumentException();
+            }
+
+            Book last = new Book();
+            last.setId(new ObjectId(rawCursor[rawCursor.length - 1]));
+            if (byPopularity) {
+                last.setReadingsCount(Integer.parseInt(rawCursor[0]));
+            }
+            return last;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package it.unipi.distribooked.repository.mongo.custom.impl;
+
+import com.mongodb.bulk.BulkWriteError;
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import it.unipi.distribooked.model.enums.TaskStatus;
+import it.unipi.distribooked.repository.mongo.custom.CustomOutboxRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Implementation of the custom OutboxRepository for bulk MongoDB operations.
+ */
+@Slf4j
+@Repository
+public class CustomOutboxRepositoryImpl implements CustomOutboxRepository {
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${outbox.completed-retention-days:7}")
+    private long completedRetentionDays; // How long completed tasks are kept before the TTL index removes them
+
+    /**
+     * Creates the indexes of the outbox collection, matching the queries run on it:
+     * - the lease query, which looks for due PENDING/RETRY_SCHEDULED tasks by nextRetryAt,
+     *   and for IN_PROGRESS tasks by leaseExpiresAt;
+     * - the uniqueness of sourceId, on which the idempotency of insertAllIgnoringDuplicates relies;
+     * - a TTL on completed tasks, so that they are removed by MongoDB in the background.
+     */
+    @PostConstruct
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(OutboxTask.class);
+
+        indexOps.ensureIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("nextRetryAt", Sort.Direction.ASC)
+                .named("status_nextRetryAt"));
+
+        indexOps.ensureIndex(new Index()
+                .on("status", Sort.Direction.ASC)
+                .on("leaseExpiresAt", Sort.Direction.ASC)
+                .named("status_leaseExpiresAt"));
+
+        // only tasks created from a source record have a sourceId
+        indexOps.ensureIndex(new Index()
+                .on("sourceId", Sort.Direction.ASC)
+                .unique()
+                .partial(PartialIndexFilter.of(Criteria.where("sourceId").exists(true)))
+                .named("sourceId_unique"));
+
+        try {
+            indexOps.ensureIndex(new Index()
+                    .on("createdAt", Sort.Direction.ASC)
+                    .expire(Duration.ofDays(completedRetentionDays))
+                    .partial(PartialIndexFilter.of(Criteria.where("status").is(TaskStatus.COMPLETED.name())))
+                    .named("completed_ttl"));
+        } catch (DataAccessException e) {
+            // an existing index with a different retention has to be changed (collMod) or dropped by hand
+            log.warn("Could not create the TTL index on completed outbox tasks: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public int insertAllIgnoringDuplicates(List<OutboxTask> tasks) {
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        // bulk inserts do not initialize the version, while the following saves expect it to be set
+        tasks.forEach(task -> task.setVersion(0L));
+
+        try {
+            return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OutboxTask.class)
+                    .insert(tasks)
+                    .execute()
+                    .getInsertedCount();
+        } catch (BulkOperationException e) {
+            // with an unordered insert, every non-duplicate task has been inserted anyway
+            boolean onlyDuplicates = e.getErrors().stream()
+                    .map(BulkWriteError::getCode)
+                    .allMatch(code -> code == DUPLICATE_KEY_ERROR);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+
+            log.info("Skipped {} outbox tasks already created from the same source", e.getErrors().size());
+            return e.getResult().getInsertedCount();
+        }
+    }
+
+    @Override
+    public List<OutboxTask> leaseTasks(String owner, Collection<OutboxTaskType> types, int limit,
+                                       Duration leaseDuration) {
+        LocalDateTime now = LocalDateTime.now();
+
+        Criteria due = Criteria.where("status").in(TaskStatus.PENDING, TaskStatus.RETRY_SCHEDULED)
+                .and("nextRetryAt").lte(now);
+        // tasks whose owner crashed or got stuck while processing them
+        Criteria expired = Criteria.where("status").is(TaskStatus.IN_PROGRESS)
+                .and("leaseExpiresAt").lte(now);
+        Criteria processable = Criteria.where("type").in(types).orOperator(due, expired);
+        Sort order = Sort.by(Sort.Direction.ASC, "nextRetryAt").and(Sort.by(Sort.Direction.ASC, "_id"));
+
+        // Find the candidates, then claim them with a single update: the update checks again that each task is
+        // still processable, so a task also picked by another instance is claimed by only one of the two
+        Query candidates = new Query(processable).with(order).limit(limit);
+        candidates.fields().include("_id");
+        List<ObjectId> ids = mongoTemplate.find(candidates, OutboxTask.class).stream()
+                .map(OutboxTask::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        String leaseToken = new ObjectId().toHexString(); // tells the tasks claimed by this call
+        mongoTemplate.updateMulti(new Query(new Criteria().andOperator(Criteria.where("_id").in(ids), due)),
+                leaseUpdate(owner, leaseToken, now, leaseDuration), OutboxTask.class);
+
+        // an expired lease counts as a failed attempt, so that a task killing or hanging its worker
+        // eventually runs out of retries
+        mongoTemplate.updateMulti(new Query(new Criteria().andOperator(Criteria.where("_id").in(ids), expired)),
+                leaseUpdate(owner, leaseToken, now, leaseDuration).inc("retryCount", 1), OutboxTask.class);
+
+        return mongoTemplate.find(
+                new Query(Criteria.where("_id").in(ids).and("leaseToken").is(leaseToken)).with(order),
+                OutboxTask.class);
+    }
+
+    private static Update leaseUpdate(String owner, String leaseToken, LocalDateTime now, Duration leaseDuration) {
+        return new Update()
+                .set("status", TaskStatus.IN_PROGRESS)
+                .set("leaseOwner", owner)
+                .set("leaseToken", leaseToken)
+                .set("leaseExpiresAt", now.plus(leaseDuration))
+                .set("updatedAt", now)
+                .inc("version", 1); // keeps the optimistic locking of later saves consistent
+    }
+
+    @Override
+    public long completeTasks(Collection<ObjectId> ids, String owner) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        Query query = new Query(Criteria.where("_id").in(ids)
+                .and("status").is(TaskStatus.IN_PROGRESS)
+                .and("leaseOwner").is(owner));
+
+        Update update = new Update()
+                .set("status", TaskStatus.COMPLETED)
+                .unset("leaseOwner")
+                .unset("leaseExpiresAt")
+                .set("updatedAt", LocalDateTime.now())
+                .inc("version", 1);
+
+        return mongoTemplate.updateMulti(query, update, OutboxTask.class).getModifiedCount();
+    }
+}
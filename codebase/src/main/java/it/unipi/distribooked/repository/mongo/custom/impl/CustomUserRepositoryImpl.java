@@ -3,30 +3,48 @@ package it.unipi.distribooked.repository.mongo.custom.impl;
 
 import com.mongodb.client.result.UpdateResult;
 import it.unipi.distribooked.dto.BooksByAgeGroupDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.exceptions.BookNotSavedException;
 import it.unipi.distribooked.model.User;
+import it.unipi.distribooked.model.UserReadingsBucket;
 import it.unipi.distribooked.model.embedded.EmbeddedBookRead;
 import it.unipi.distribooked.model.embedded.EmbeddedBookSaved;
 import it.unipi.distribooked.repository.mongo.custom.CustomUserRepository;
+import jakarta.annotation.PostConstruct;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.*;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 import it.unipi.distribooked.exceptions.BookSaveException;
 
 
+import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
 import static org.springframework.data.mongodb.core.query.Criteria.where;
@@ -51,6 +69,140 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    @Value("${users.recent-readings:20}")
+    private int recentReadingsSize; // Readings kept in the user document
+
+    @Value("${users.readings-bucket-size:100}")
+    private int readingsBucketSize; // Readings per bucket of the reading history
+
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String READINGS_MIGRATION = "user_readings_buckets";
+    private static final int MIGRATION_ATTEMPTS = 3; // Attempts per user, the migration of a user may conflict with another instance
+
+    @Autowired
+    private MongoTransactionManager transactionManager; // Used to move the readings of a user and trim them together
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        ensureIndexes();
+        migrateReadingsToBuckets();
+    }
+
+    /**
+     * Creates the indexes of the reading history collection: by user and bucket, used to append readings
+     * to the last bucket and to page through the history, and by return date, used by the statistics.
+     * A unique partial index allows a single bucket that is not full per user, so that two instances adding
+     * readings of the same user cannot both open a new bucket, which would break the order of the history;
+     * startup fails if it cannot be created.
+     * Creating them also creates the collection, which cannot happen inside the outbox transactions.
+     */
+    private void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(UserReadingsBucket.class);
+
+        indexOps.ensureIndex(new Index()
+                .on("userId", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.DESC)
+                .named("userId_id"));
+
+        indexOps.ensureIndex(new Index()
+                .on("readings.returnDate", Sort.Direction.ASC)
+                .named("readings_returnDate"));
+
+        try {
+            indexOps.ensureIndex(new Index()
+                    .on("userId", Sort.Direction.ASC)
+                    .unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("count").lt(readingsBucketSize)))
+                    .named("userId_open_unique"));
+        } catch (DataAccessException e) {
+            // an index for another bucket size, or users with more than one open bucket, have to be fixed by hand;
+            // running without the index would let concurrent instances open several buckets for the same user
+            logger.error("Could not create the unique index on open reading buckets: {}", e.getMessage());
+            throw new IllegalStateException("Missing unique index on open reading buckets", e);
+        }
+    }
+
+    /**
+     * Moves the readings of the users created before the reading history was bucketed into user_readings,
+     * then trims their documents to the most recent readings, so that no reading is lost when the first
+     * new reading is pushed with $slice. Runs at startup, before any reading is processed, until one run
+     * completes; each user is moved in a transaction, so an interrupted run is simply resumed.
+     * Instances starting together may run it concurrently: the first bucket of a user takes the ID of the
+     * user, so the same user cannot be moved twice.
+     */
+    private void migrateReadingsToBuckets() {
+        if (mongoTemplate.exists(new Query(Criteria.where("_id").is(READINGS_MIGRATION)
+                .and("completedAt").exists(true)), MIGRATIONS_COLLECTION)) {
+            return;
+        }
+
+        logger.info("Moving the readings of existing users to the reading history buckets");
+        Query users = new Query(Criteria.where("readings.0").exists(true));
+        users.fields().include("_id");
+
+        int moved = 0;
+        try (Stream<Document> userIds = mongoTemplate.stream(users, Document.class, "users")) {
+            Iterator<Document> iterator = userIds.iterator();
+            while (iterator.hasNext()) {
+                if (migrateReadings(iterator.next().getObjectId("_id"))) {
+                    moved++;
+                }
+            }
+        }
+
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(READINGS_MIGRATION)),
+                new Update().set("completedAt", new Date()), MIGRATIONS_COLLECTION);
+        logger.info("Moved the readings of {} users to the reading history buckets", moved);
+    }
+
+    private boolean migrateReadings(ObjectId userId) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    // users with buckets were moved already, or created after the buckets were introduced
+                    if (mongoTemplate.exists(new Query(Criteria.where("userId").is(userId)), UserReadingsBucket.class)) {
+                        return false;
+                    }
+                    Query user = new Query(Criteria.where("_id").is(userId));
+                    user.fields().include("readings");
+                    Document userDocument = mongoTemplate.findOne(user, Document.class, "users");
+                    List<Document> readings = userDocument == null ? null : userDocument.getList("readings", Document.class);
+                    if (readings == null || readings.isEmpty()) {
+                        return false;
+                    }
+
+                    // Buckets in the order the readings were added, their IDs increasing from the ID of the user
+                    List<Document> buckets = new ArrayList<>();
+                    for (int start = 0; start < readings.size(); start += readingsBucketSize) {
+                        List<Document> bucketReadings = readings.subList(start,
+                                Math.min(start + readingsBucketSize, readings.size()));
+                        buckets.add(new Document("_id", buckets.isEmpty() ? userId : new ObjectId())
+                                .append("userId", userId)
+                                .append("count", bucketReadings.size())
+                                .append("readings", bucketReadings));
+                    }
+                    mongoTemplate.insert(buckets, "user_readings");
+
+                    mongoTemplate.updateFirst(user, new Update().set("readings",
+                            readings.subList(Math.max(0, readings.size() - recentReadingsSize), readings.size())),
+                            "users");
+                    return true;
+                }));
+            } catch (DataAccessException e) {
+                // another instance is moving the same user, the next attempt finds its buckets
+                if (attempt == MIGRATION_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Moving the readings of user {} failed, retrying: {}", userId, e.getMessage());
+            }
+        }
+    }
+
     @Override
     public boolean unsaveBook(String userId, String bookId) {
         Query query = new Query(Criteria.where("_id").is(new ObjectId(userId)));
@@ -99,14 +251,89 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
     }
 
     @Override
-    public boolean addReadBook(ObjectId userId, EmbeddedBookRead bookRead) {
-        Query query = new Query(Criteria.where("_id").is(userId));
-        Update update = new Update().push("readings", bookRead);
+    public Set<ObjectId> addReadBooks(List<ReadBook> readBooks) {
+        if (readBooks.isEmpty()) {
+            return Set.of();
+        }
 
-        UpdateResult result = mongoTemplate.updateFirst(query, update, User.class);
+        // Keep only the most recent readings in the user documents
+        BulkOperations userOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        readBooks.forEach(readBook -> userOps.updateOne(
+                new Query(Criteria.where("_id").is(readBook.userId())),
+                new Update().push("readings")
+                        .sort(Sort.by(Sort.Direction.ASC, "returnDate"))
+                        .slice(-recentReadingsSize)
+                        .each(readBook.bookRead())));
+
+        Set<ObjectId> missingUsers = userOps.execute().getMatchedCount() == readBooks.size()
+                ? Set.of()
+                : findMissingUsers(readBooks);
+
+        // Append the readings to the last bucket of each user, a new bucket is created when it is full.
+        // Ordered, so that the readings of a user fill the buckets in sequence.
+        // If another instance opened a bucket of the same user meanwhile, the unique index rejects the new one.
+        BulkOperations bucketOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, UserReadingsBucket.class);
+        readBooks.stream()
+                .filter(readBook -> !missingUsers.contains(readBook.userId()))
+                .forEach(readBook -> bucketOps.upsert(
+                        new Query(Criteria.where("userId").is(readBook.userId()).and("count").lt(readingsBucketSize)),
+                        new Update().push("readings", readBook.bookRead()).inc("count", 1)));
+
+        if (missingUsers.size() < readBooks.size()) {
+            try {
+                bucketOps.execute();
+            } catch (BulkOperationException e) {
+                if (e.getErrors().stream().anyMatch(error -> error.getCode() == DUPLICATE_KEY_ERROR)) {
+                    // the caller retries, appending to the bucket opened by the other instance
+                    throw new DuplicateKeyException("A reading bucket was opened concurrently for the same user", e);
+                }
+                throw e;
+            }
+        }
+        return missingUsers;
+    }
 
-        // return true if the book was added successfully
-        return result.getModifiedCount() > 0;
+    private Set<ObjectId> findMissingUsers(List<ReadBook> readBooks) {
+        // some users do not exist (anymore), find out which ones
+        Set<ObjectId> userIds = readBooks.stream().map(ReadBook::userId).collect(Collectors.toSet());
+        Query existing = new Query(Criteria.where("_id").in(userIds));
+        existing.fields().include("_id");
+        mongoTemplate.find(existing, User.class).forEach(user -> userIds.remove(user.getId()));
+        return userIds;
+    }
+
+    @Override
+    public CursorPageDTO<EmbeddedBookRead> findReadingsHistory(ObjectId userId, String cursor, int size) {
+        BucketPosition position = BucketPosition.decode(cursor);
+
+        // Buckets from the most recent one, starting from the bucket of the cursor
+        Query query = new Query(Criteria.where("userId").is(userId))
+                .with(Sort.by(Sort.Direction.DESC, "_id"))
+                .cursorBatchSize(size / readingsBucketSize + 2);
+        if (position != null) {
+            query.addCriteria(Criteria.where("_id").lte(position.bucketId()));
+        }
+
+        List<EmbeddedBookRead> readings = new ArrayList<>(size);
+        try (Stream<UserReadingsBucket> buckets = mongoTemplate.stream(query, UserReadingsBucket.class)) {
+            Iterator<UserReadingsBucket> iterator = buckets.iterator();
+            while (iterator.hasNext()) {
+                UserReadingsBucket bucket = iterator.next();
+                List<EmbeddedBookRead> bucketReadings = bucket.getReadings();
+
+                // Readings are appended to the end of the bucket, so they are read backwards
+                int index = position != null && bucket.getId().equals(position.bucketId())
+                        ? Math.min(position.index(), bucketReadings.size() - 1)
+                        : bucketReadings.size() - 1;
+                for (; index >= 0; index--) {
+                    if (readings.size() == size) {
+                        return new CursorPageDTO<>(readings, new BucketPosition(bucket.getId(), index).encode());
+                    }
+                    readings.add(bucketReadings.get(index));
+                }
+            }
+        }
+        return new CursorPageDTO<>(readings, null);
     }
 
     @Override
@@ -124,7 +351,7 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
     private Aggregation buildAggregationPipeline(String startDate, String endDate) {
         return newAggregation(
 
-                // Initial filter: retain only users who have readings within the specified date range
+                // Initial filter: retain only the history buckets with readings within the specified date range
                 // This step optimizes performance by excluding irrelevant documents early on
                 Aggregation.match(
                         Criteria.where("readings").elemMatch(
@@ -132,23 +359,33 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
                         )
                 ),
 
-                // Compute the user's age group before unwinding the readings array
-                // This step avoids recalculating the age group for each reading record
-                calculateAgeGroupField(),
-
-                // Retain only the necessary fields: computed age group and readings array
-                Aggregation.project()
-                        .andInclude("age_group")
-                        .andInclude("readings"),
-
                 // Unwind the readings array to process individual reading records
                 Aggregation.unwind("readings"),
 
                 // Filter out readings that do not fall within the specified date range
                 Aggregation.match(Criteria.where("readings.returnDate").gte(startDate).lte(endDate)),
 
+                // Collect the books read by each user, so that each user is looked up only once
+                ctx -> new Document("$group",
+                        new Document("_id", "$userId")
+                                .append("books", new Document("$push",
+                                        new Document("id", "$readings.id")
+                                                .append("title", "$readings.title")))),
+
+                // Join the user, whose date of birth determines the age group
+                Aggregation.lookup("users", "_id", "_id", "user"),
+                Aggregation.unwind("user"),
+                Aggregation.project("books").and("user.dateOfBirth").as("dateOfBirth"),
+
+                // Compute the user's age group before unwinding the books array
+                // This step avoids recalculating the age group for each reading record
+                calculateAgeGroupField(),
+
+                // Unwind the books array to count individual reading records
+                Aggregation.unwind("books"),
+
                 // Group by age group and book ID, counting the number of times each book was read
-                group("age_group", "readings.id", "readings.title")
+                group("age_group", "books.id", "books.title")
                         .count().as("readCount"),
 
                 // Sort the results by the number of times a book was read, in descending order
@@ -246,12 +483,12 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
     }
 
     /**
-     * Executes the aggregation query on the "users" collection.
+     * Executes the aggregation query on the "user_readings" collection.
      * Maps the results to `BooksByAgeGroupDTO` objects and logs the number of results found.
      */
     private List<BooksByAgeGroupDTO> executeAggregation(Aggregation aggregation) {
         AggregationResults<BooksByAgeGroupDTO> results =
-                mongoTemplate.aggregate(aggregation, "users", BooksByAgeGroupDTO.class);
+                mongoTemplate.aggregate(aggregation, "user_readings", BooksByAgeGroupDTO.class);
         List<BooksByAgeGroupDTO> mappedResults = results.getMappedResults();
         logger.info("Aggregation returned {} results", mappedResults.size());
         return mappedResults;
@@ -264,6 +501,7 @@ public class CustomUserRepositoryImpl implements CustomUserRepository {
 
         Aggregation aggregation = newAggregation(
                 // Stage 1: Filter users who have at least one reading in the last 365 days
+                // The recent readings kept in the user document always include the last one, so they are enough here
                 match(Criteria.where("readings.returnDate").gte(oneYearAgo)),
 
                 // Stage 2: Calculate user's age
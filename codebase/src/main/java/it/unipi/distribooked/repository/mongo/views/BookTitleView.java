@@ -0,0 +1,8 @@
+package it.unipi.distribooked.repository.mongo.views;
+
+import org.bson.types.ObjectId;
+
+public interface BookTitleView {
+    ObjectId getId();
+    String getTitle();
+}
@@ -1,8 +1,6 @@
 package it.unipi.distribooked.repository.redis;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.dto.LoanDTO;
 import it.unipi.distribooked.dto.OverdueLoanDTO;
 import it.unipi.distribooked.dto.ReservationDTO;
@@ -11,20 +9,24 @@ import it.unipi.distribooked.utils.RedisKey;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Repository;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisSentinelPool;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
 import  redis.clients.jedis.util.Pool;
 
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * Repository for managing loans and reservations in Redis.
@@ -43,17 +45,33 @@ public class LoanRepository {
     @Autowired
     private Pool<Jedis> jedisPool;
 
+    @Autowired
+    private LuaResultCodec luaResultCodec;
+
     private String markAsLoanScriptSha;
 
     private String completeLoanScriptSha;
 
+    private String listEntriesScriptSha;
+
+    private String scanEntriesScriptSha;
+
+    private String backfillDueIndexScriptSha;
+
     private static final int LOAN_DURATION_SECONDS = 30 * 24 * 60 * 60; // 30 days
 
+    private static final int BACKFILL_SCAN_COUNT = 1000; // HSCAN COUNT hint of each backfill step
+
+    @PostConstruct
+    public void init() {
+        loadScripts();
+        backfillDueIndex();
+    }
+
     // The SHA-1 hash in Redis is a unique identifier for a Lua script.
     // When a script is loaded into Redis using SCRIPT LOAD, Redis computes its SHA-1 hash.
     // This hash can then be used with EVALSHA to execute the script without resending its content,
     // improving performance by reducing network overhead and avoiding script recompilation.
-    @PostConstruct
     public void loadScripts() {
         try(Jedis jedis = jedisPool.getResource()) {
             // Load the script for marking reservations as loans
@@ -65,9 +83,89 @@ public class LoanRepository {
             String completeLoanScript = LuaScriptLoader.loadScript("complete_loan.lua");
             completeLoanScriptSha = jedis.scriptLoad(completeLoanScript);
             log.info("Loaded complete_loan.lua script with SHA: {}", completeLoanScriptSha);
+
+            // Load the script for listing library hash entries along with their TTLs
+            String listEntriesScript = LuaScriptLoader.loadScript("list_library_entries.lua");
+            listEntriesScriptSha = jedis.scriptLoad(listEntriesScript);
+            log.info("Loaded list_library_entries.lua script with SHA: {}", listEntriesScriptSha);
+
+            // Load the script for scanning library hash entries page by page
+            String scanEntriesScript = LuaScriptLoader.loadScript("scan_library_entries.lua");
+            scanEntriesScriptSha = jedis.scriptLoad(scanEntriesScript);
+            log.info("Loaded scan_library_entries.lua script with SHA: {}", scanEntriesScriptSha);
+
+            // Load the script for indexing the loans created before the due date index
+            String backfillDueIndexScript = LuaScriptLoader.loadScript("backfill_due_index.lua");
+            backfillDueIndexScriptSha = jedis.scriptLoad(backfillDueIndexScript);
+            log.info("Loaded backfill_due_index.lua script with SHA: {}", backfillDueIndexScriptSha);
         }
     }
 
+    /**
+     * Adds to the library due date indexes the loans created before the indexes existed, so that the overdue
+     * and due soon listings, which only read the indexes, include them:
+     * - loans in the loans hash are due at the end of the loan, unless already indexed;
+     * - loans in the overdue hash are due no later than the time they were marked overdue.
+     * Runs at startup until it completes once. Entries are only added or moved earlier, as the scripts
+     * maintaining the indexes do, so runs on several instances at the same time are harmless.
+     */
+    private void backfillDueIndex() {
+        String doneKey = RedisKey.DUE_INDEX_BACKFILLED.getKey();
+        try (Jedis jedis = jedisPool.getResource()) {
+            if (jedis.exists(doneKey)) {
+                return;
+            }
+
+            Set<String> libraryIds = new HashSet<>();
+            libraryIds.addAll(scanLibraryIds(jedis, RedisKey.LIBRARY_LOANS));
+            libraryIds.addAll(scanLibraryIds(jedis, RedisKey.LIBRARY_OVERDUE));
+
+            for (String libraryId : libraryIds) {
+                String dueKey = RedisKey.LIBRARY_DUE_ZSET.getKey(libraryId);
+                backfillDueIndex(jedis, RedisKey.LIBRARY_LOANS.getKey(libraryId), dueKey, LOAN_DURATION_SECONDS * 1000L);
+                backfillDueIndex(jedis, RedisKey.LIBRARY_OVERDUE.getKey(libraryId), dueKey, 0);
+            }
+
+            jedis.set(doneKey, String.valueOf(System.currentTimeMillis()));
+            log.info("Indexed by due date the loans of {} libraries", libraryIds.size());
+        }
+    }
+
+    /**
+     * Finds the libraries having a hash of the given kind, from the keys of the hashes.
+     */
+    private static Set<String> scanLibraryIds(Jedis jedis, RedisKey libraryHash) {
+        Set<String> libraryIds = new HashSet<>();
+        ScanParams params = new ScanParams().match(libraryHash.getKey("*")).count(BACKFILL_SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanResult<String> scan = jedis.scan(cursor, params);
+            scan.getResult().forEach(key -> libraryIds.add(key.split(":")[1]));
+            cursor = scan.getCursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+        return libraryIds;
+    }
+
+    /**
+     * Indexes all the entries of a library hash, one HSCAN step per script call.
+     *
+     * @param loanDuration The loan duration in milliseconds for the loans hash, 0 for the overdue hash.
+     */
+    private void backfillDueIndex(Jedis jedis, String hashKey, String dueKey, long loanDuration) {
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            List<String> args = List.of(cursor, String.valueOf(BACKFILL_SCAN_COUNT), String.valueOf(loanDuration));
+            Object result;
+            try {
+                result = jedis.evalsha(backfillDueIndexScriptSha, List.of(hashKey, dueKey), args);
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                loadScripts();
+                result = jedis.evalsha(backfillDueIndexScriptSha, List.of(hashKey, dueKey), args);
+            }
+            cursor = String.valueOf(result);
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
     /**
      * Retrieves all loans for a specific library.
      *
@@ -77,81 +175,24 @@ public class LoanRepository {
     public List<LoanDTO> getAllLoans(String libraryId) {
         String loansKey = RedisKey.LIBRARY_LOANS.getKey(libraryId);
         try {
-            Boolean exists = redisTemplate.hasKey(loansKey);
-            if (exists == null || !exists) {
+            // Entries and their TTLs are fetched together in a single round trip
+            List<LibraryEntry> entries = listLibraryEntries(loansKey);
+            if (entries.isEmpty()) {
                 log.info("No loans found for library {}", libraryId);
                 return Collections.emptyList();
             }
 
-            Map<Object, Object> loansMap = redisTemplate.opsForHash().entries(loansKey);
-            if (loansMap.isEmpty()) {
-                log.info("Empty loans hash for library {}", libraryId);
-                return Collections.emptyList();
+            LocalDateTime now = LocalDateTime.now();
+            List<LoanDTO> loans = new ArrayList<>(entries.size());
+
+            for (LibraryEntry entry : entries) {
+                LoanDTO loan = toLoan(libraryId, entry, now);
+                if (loan != null) {
+                    loans.add(loan);
+                }
             }
 
-            return loansMap.entrySet().stream()
-                    .map(entry -> {
-                        String key = entry.getKey().toString();
-                        String value = entry.getValue().toString();
-                        try {
-                            String[] parts = key.split(":");
-                            if (parts.length >= 4) {
-                                String userId = parts[1];
-                                String bookId = parts[3];
-
-                                // Parse the loan timestamp from the value
-                                long loanedAtMillis = Long.parseLong(value);
-                                LocalDateTime loanedAt = LocalDateTime.ofInstant(
-                                        Instant.ofEpochMilli(loanedAtMillis),
-                                        ZoneId.systemDefault());
-
-                                // Get the remaining TTL for this specific field
-                                Long remainingTTL = redisTemplate.execute((RedisConnection connection) -> {
-                                    Object result = connection.execute("HPTTL",
-                                            loansKey.getBytes(),
-                                            "FIELDS".getBytes(),
-                                            "1".getBytes(),
-                                            key.getBytes());
-
-                                    if (result instanceof List<?> list && !list.isEmpty()) {
-                                        Object ttlValue = list.get(0);
-                                        if (ttlValue instanceof Number) {
-                                            return ((Number) ttlValue).longValue();
-                                        }
-                                    }
-                                    return null;
-                                });
-
-                                // Calculate due date based on remaining TTL
-                                LocalDateTime dueDate;
-                                if (remainingTTL != null && remainingTTL > 0) {
-                                    dueDate = LocalDateTime.now()
-                                            .plus(remainingTTL, ChronoUnit.MILLIS);
-                                } else {
-                                    log.warn("No valid TTL found for loan key {} in library {}",
-                                            key, libraryId);
-                                    return null;
-                                }
-
-                                return new LoanDTO(
-                                        userId,
-                                        bookId,
-                                        libraryId,
-                                        loanedAt,
-                                        dueDate
-                                );
-                            }
-                            log.warn("Invalid key format for loan in library {}: {}",
-                                    libraryId, key);
-                            return null;
-                        } catch (Exception e) {
-                            log.error("Error processing loan entry in library {}: {} - {}",
-                                    libraryId, key, e.getMessage(), e);
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+            return loans;
 
         } catch (Exception e) {
             log.error("Error retrieving loans for library {}: {}",
@@ -170,83 +211,24 @@ public class LoanRepository {
     public List<ReservationDTO> getAllReservations(String libraryId) {
         String reservationsKey = RedisKey.LIBRARY_RESERVATIONS.getKey(libraryId);
         try {
-            Boolean exists = redisTemplate.hasKey(reservationsKey);
-            if (exists == null || !exists) {
+            // Entries and their TTLs are fetched together in a single round trip
+            List<LibraryEntry> entries = listLibraryEntries(reservationsKey);
+            if (entries.isEmpty()) {
                 log.info("No reservations found for library {}", libraryId);
                 return Collections.emptyList();
             }
 
-            Map<Object, Object> reservationsMap = redisTemplate.opsForHash().entries(reservationsKey);
-            if (reservationsMap.isEmpty()) {
-                log.info("Empty reservations hash for library {}", libraryId);
-                return Collections.emptyList();
+            LocalDateTime now = LocalDateTime.now();
+            List<ReservationDTO> reservations = new ArrayList<>(entries.size());
+
+            for (LibraryEntry entry : entries) {
+                ReservationDTO reservation = toReservation(libraryId, entry, now);
+                if (reservation != null) {
+                    reservations.add(reservation);
+                }
             }
 
-            return reservationsMap.entrySet().stream()
-                    .map(entry -> {
-                        String key = entry.getKey().toString();
-                        String value = entry.getValue().toString();
-                        try {
-                            String[] parts = key.split(":");
-                            if (parts.length >= 4) {
-                                String userId = parts[1];
-                                String bookId = parts[3];
-
-                                // Parse the reservation timestamp from the value
-                                long reservedAtMillis = Long.parseLong(value);
-                                LocalDateTime reservedAt = LocalDateTime.ofInstant(
-                                        Instant.ofEpochMilli(reservedAtMillis),
-                                        ZoneId.systemDefault());
-
-                                // Get the remaining TTL for this specific field
-                                Long remainingTTL = redisTemplate.execute((RedisConnection connection) -> {
-                                    Object result = connection.execute("HPTTL",
-                                            reservationsKey.getBytes(),
-                                            "FIELDS".getBytes(),
-                                            "1".getBytes(),
-                                            key.getBytes());
-
-                                    if (result instanceof List<?> list && !list.isEmpty()) {
-                                        Object ttlValue = list.get(0);
-                                        if (ttlValue instanceof Number) {
-                                            return ((Number) ttlValue).longValue();
-                                        }
-                                    }
-                                    return null;
-                                });
-
-                                // Calculate expiration time based on remaining TTL
-                                LocalDateTime expiresAt;
-                                if (remainingTTL != null && remainingTTL > 0) {
-                                    // Calculate expiration time by adding remaining TTL to current time
-                                    expiresAt = LocalDateTime.now()
-                                            .plus(remainingTTL, ChronoUnit.MILLIS);
-                                } else {
-                                    // If no TTL found or expired, log warning and skip
-                                    log.warn("No valid TTL found for reservation key {} in library {}",
-                                            key, libraryId);
-                                    return null;
-                                }
-
-                                return new ReservationDTO(
-                                        userId,
-                                        bookId,
-                                        libraryId,
-                                        reservedAt,
-                                        expiresAt
-                                );
-                            }
-                            log.warn("Invalid key format for reservation in library {}: {}",
-                                    libraryId, key);
-                            return null;
-                        } catch (Exception e) {
-                            log.error("Error processing reservation entry in library {}: {} - {}",
-                                    libraryId, key, e.getMessage(), e);
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+            return reservations;
 
         } catch (Exception e) {
             log.error("Error retrieving reservations for library {}: {}",
@@ -257,82 +239,45 @@ public class LoanRepository {
     }
 
     /**
-     * Retrieves all overdue loans for a specific library.
+     * Retrieves all overdue loans for a specific library, most overdue first.
      *
      * @param libraryId The ID of the library.
      * @return A list of overdue loans (keys of loans that are overdue).
      */
     public List<OverdueLoanDTO> getOverdueLoans(String libraryId) {
-        String loansKey = RedisKey.LIBRARY_OVERDUE.getKey(libraryId);
-        try {
-            Boolean exists = redisTemplate.hasKey(loansKey);
-            if (exists == null || !exists) {
-                log.info("No loans found for library {}", libraryId);
-                return Collections.emptyList();
-            }
-
-            Map<Object, Object> loansMap = redisTemplate.opsForHash().entries(loansKey);
-            if (loansMap.isEmpty()) {
-                log.info("Empty loans hash for library {}", libraryId);
-                return Collections.emptyList();
-            }
+        return getOverdueLoans(libraryId, -1);
+    }
 
-            List<OverdueLoanDTO> overdueLoans = new ArrayList<>();
-
-            log.info("Found {} loans in library {}", loansMap.size(), libraryId);
-
-            for (Map.Entry<Object, Object> entry : loansMap.entrySet()) {
-                String key = entry.getKey().toString();
-                try {
-                    String[] parts = key.split(":");
-                    if (parts.length >= 4) {
-                        String userId = parts[1];
-                        String bookId = parts[3];
-
-                        // Get the TTL for this specific field
-                        Long remainingTTL = redisTemplate.execute((RedisConnection connection) -> {
-                            Object result = connection.execute("HPTTL",
-                                    loansKey.getBytes(),
-                                    "FIELDS".getBytes(),
-                                    "1".getBytes(),
-                                    key.getBytes());
-
-                            if (result instanceof List<?> list && !list.isEmpty()) {
-                                Object ttlValue = list.get(0);
-                                if (ttlValue instanceof Number) {
-                                    return ((Number) ttlValue).longValue();
-                                }
-                            }
-                            return null;
-                        });
-
-                        // If TTL is null or <= 0, the loan is overdue
-                        if (remainingTTL == null || remainingTTL <= 0) {
-                            // Calculate the original due date from the loan value and loan duration
-                            String value = entry.getValue().toString();
-                            long loanedAtMillis = Long.parseLong(value);
-                            LocalDateTime loanedAt = LocalDateTime.ofInstant(
-                                    Instant.ofEpochMilli(loanedAtMillis),
-                                    ZoneId.systemDefault());
-
-                            // Add loan duration (e.g., 30 days) to get the original due date
-                            LocalDateTime dueDate = loanedAt.plus(30, ChronoUnit.DAYS); // Adjust duration as needed
-
-                            overdueLoans.add(new OverdueLoanDTO(
-                                    userId,
-                                    bookId,
-                                    libraryId,
-                                    dueDate
-                            ));
-                        }
-                    }
-                } catch (Exception e) {
-                    log.error("Error processing overdue loan entry in library {}: {} - {}",
-                            libraryId, key, e.getMessage(), e);
-                    // Continue processing other entries
+    /**
+     * Retrieves the overdue loans for a specific library, most overdue first.
+     * Reads the library due date index by score, so only overdue loans are fetched.
+     *
+     * @param libraryId The ID of the library.
+     * @param limit     The maximum number of loans to return, or a negative value for no limit.
+     * @return A list of overdue loans ordered by due date.
+     */
+    public List<OverdueLoanDTO> getOverdueLoans(String libraryId, int limit) {
+        try {
+            Set<ZSetOperations.TypedTuple<Object>> dueEntries = rangeByDueDate(
+                    libraryId, Double.NEGATIVE_INFINITY, System.currentTimeMillis(), limit);
+
+            List<OverdueLoanDTO> overdueLoans = new ArrayList<>(dueEntries.size());
+            for (ZSetOperations.TypedTuple<Object> entry : dueEntries) {
+                String[] parts = String.valueOf(entry.getValue()).split(":");
+                if (parts.length < 4 || entry.getScore() == null) {
+                    log.warn("Invalid due date entry in library {}: {}", libraryId, entry.getValue());
+                    continue;
                 }
+
+                overdueLoans.add(new OverdueLoanDTO(
+                        parts[1],
+                        parts[3],
+                        libraryId,
+                        toLocalDateTime(entry.getScore().longValue())
+                ));
             }
 
+            log.info("Found {} overdue loans in library {}", overdueLoans.size(), libraryId);
             return overdueLoans;
 
         } catch (Exception e) {
@@ -343,6 +288,335 @@ public class LoanRepository {
         }
     }
 
+    /**
+     * Retrieves the loans of a specific library that fall due within the given number of days,
+     * soonest first. Loans that are already overdue are not included.
+     *
+     * @param libraryId The ID of the library.
+     * @param days      The number of days from now.
+     * @return A list of loans ordered by due date.
+     */
+    public List<LoanDTO> getLoansDueWithin(String libraryId, int days) {
+        try {
+            long now = System.currentTimeMillis();
+            Set<ZSetOperations.TypedTuple<Object>> dueEntries = rangeByDueDate(
+                    libraryId, now, now + Duration.ofDays(days).toMillis(), -1);
+
+            List<LoanDTO> loans = new ArrayList<>(dueEntries.size());
+            for (ZSetOperations.TypedTuple<Object> entry : dueEntries) {
+                String[] parts = String.valueOf(entry.getValue()).split(":");
+                if (parts.length < 4 || entry.getScore() == null) {
+                    log.warn("Invalid due date entry in library {}: {}", libraryId, entry.getValue());
+                    continue;
+                }
+
+                long dueAtMillis = entry.getScore().longValue();
+                loans.add(new LoanDTO(
+                        parts[1],
+                        parts[3],
+                        libraryId,
+                        toLocalDateTime(dueAtMillis - LOAN_DURATION_SECONDS * 1000L),
+                        toLocalDateTime(dueAtMillis)
+                ));
+            }
+
+            return loans;
+
+        } catch (Exception e) {
+            log.error("Error retrieving loans due within {} days for library {}: {}",
+                    days, libraryId, e.getMessage());
+            throw new IllegalStateException(
+                    "Error retrieving loans due soon for library ID: " + libraryId, e);
+        }
+    }
+
+    /**
+     * Reads a due date range of the library due date index, ordered by due date.
+     *
+     * @param limit The maximum number of entries to return, or a negative value for no limit.
+     */
+    private Set<ZSetOperations.TypedTuple<Object>> rangeByDueDate(String libraryId, double min, double max, int limit) {
+        String dueKey = RedisKey.LIBRARY_DUE_ZSET.getKey(libraryId);
+        Set<ZSetOperations.TypedTuple<Object>> entries = limit < 0
+                ? redisTemplate.opsForZSet().rangeByScoreWithScores(dueKey, min, max)
+                : redisTemplate.opsForZSet().rangeByScoreWithScores(dueKey, min, max, 0, limit);
+        return entries != null ? entries : Collections.emptySet();
+    }
+
+    /**
+     * Retrieves a single page of the loans of a specific library, scanning the loans hash
+     * incrementally so that only the requested page is materialized in memory.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The opaque cursor returned by the previous page, or null for the first page.
+     * @param size      The approximate number of entries to scan for this page.
+     * @return The page of loans and the cursor of the next page (null when the scan is complete).
+     */
+    public CursorPageDTO<LoanDTO> getLoansPage(String libraryId, String cursor, int size) {
+        String loansKey = RedisKey.LIBRARY_LOANS.getKey(libraryId);
+        ScanPage page = scanLibraryEntries(loansKey, decodeCursor(cursor), size);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<LoanDTO> loans = new ArrayList<>(page.entries().size());
+        for (LibraryEntry entry : page.entries()) {
+            LoanDTO loan = toLoan(libraryId, entry, now);
+            if (loan != null) {
+                loans.add(loan);
+            }
+        }
+
+        return new CursorPageDTO<>(loans, encodeCursor(page.cursor()));
+    }
+
+    /**
+     * Retrieves a single page of the reservations of a specific library, scanning the reservations
+     * hash incrementally so that only the requested page is materialized in memory.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The opaque cursor returned by the previous page, or null for the first page.
+     * @param size      The approximate number of entries to scan for this page.
+     * @return The page of reservations and the cursor of the next page (null when the scan is complete).
+     */
+    public CursorPageDTO<ReservationDTO> getReservationsPage(String libraryId, String cursor, int size) {
+        String reservationsKey = RedisKey.LIBRARY_RESERVATIONS.getKey(libraryId);
+        ScanPage page = scanLibraryEntries(reservationsKey, decodeCursor(cursor), size);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<ReservationDTO> reservations = new ArrayList<>(page.entries().size());
+        for (LibraryEntry entry : page.entries()) {
+            ReservationDTO reservation = toReservation(libraryId, entry, now);
+            if (reservation != null) {
+                reservations.add(reservation);
+            }
+        }
+
+        return new CursorPageDTO<>(reservations, encodeCursor(page.cursor()));
+    }
+
+    /**
+     * Streams all the loans of a specific library to the given consumer, one scanned batch at a time.
+     * At most one batch is held in memory regardless of the size of the loans hash.
+     *
+     * @param libraryId The ID of the library.
+     * @param batchSize The HSCAN COUNT hint used for each batch.
+     * @param consumer  The consumer receiving each loan as soon as it is scanned.
+     */
+    public void streamLoans(String libraryId, int batchSize, Consumer<LoanDTO> consumer) {
+        String loansKey = RedisKey.LIBRARY_LOANS.getKey(libraryId);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanPage page = scanLibraryEntries(loansKey, cursor, batchSize);
+            LocalDateTime now = LocalDateTime.now();
+            for (LibraryEntry entry : page.entries()) {
+                LoanDTO loan = toLoan(libraryId, entry, now);
+                if (loan != null) {
+                    consumer.accept(loan);
+                }
+            }
+            cursor = page.cursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Streams all the reservations of a specific library to the given consumer, one scanned batch at a time.
+     * At most one batch is held in memory regardless of the size of the reservations hash.
+     *
+     * @param libraryId The ID of the library.
+     * @param batchSize The HSCAN COUNT hint used for each batch.
+     * @param consumer  The consumer receiving each reservation as soon as it is scanned.
+     */
+    public void streamReservations(String libraryId, int batchSize, Consumer<ReservationDTO> consumer) {
+        String reservationsKey = RedisKey.LIBRARY_RESERVATIONS.getKey(libraryId);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        do {
+            ScanPage page = scanLibraryEntries(reservationsKey, cursor, batchSize);
+            LocalDateTime now = LocalDateTime.now();
+            for (LibraryEntry entry : page.entries()) {
+                ReservationDTO reservation = toReservation(libraryId, entry, now);
+                if (reservation != null) {
+                    consumer.accept(reservation);
+                }
+            }
+            cursor = page.cursor();
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+    }
+
+    /**
+     * Single hash entry returned by the listing script, with its remaining TTL in milliseconds.
+     */
+    private record LibraryEntry(String field, String value, Long ttl) {}
+
+    /**
+     * One HSCAN step over a library hash: the entries scanned and the cursor to resume from.
+     */
+    private record ScanPage(String cursor, List<LibraryEntry> entries) {}
+
+    /**
+     * Lists all the entries of a library hash along with their field TTLs using
+     * a single EVALSHA call, rather than issuing one HPTTL per field.
+     *
+     * @param hashKey The key of the library hash.
+     * @return The entries of the hash, empty if the hash does not exist.
+     */
+    private List<LibraryEntry> listLibraryEntries(String hashKey) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result;
+            try {
+                result = jedis.evalsha(listEntriesScriptSha, List.of(hashKey), List.of());
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                loadScripts();
+                result = jedis.evalsha(listEntriesScriptSha, List.of(hashKey), List.of());
+            }
+
+            if (!(result instanceof List<?> flat)) {
+                return Collections.emptyList();
+            }
+            return toEntries(flat, 0);
+        }
+    }
+
+    /**
+     * Performs one HSCAN step over a library hash, fetching the TTL of the scanned fields
+     * in the same round trip.
+     *
+     * @param hashKey The key of the library hash.
+     * @param cursor  The raw HSCAN cursor to resume from.
+     * @param count   The HSCAN COUNT hint.
+     * @return The scanned entries along with the cursor to resume from ("0" when the scan is complete).
+     */
+    private ScanPage scanLibraryEntries(String hashKey, String cursor, int count) {
+        List<String> args = List.of(cursor, String.valueOf(count));
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object result;
+            try {
+                result = jedis.evalsha(scanEntriesScriptSha, List.of(hashKey), args);
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                loadScripts();
+                result = jedis.evalsha(scanEntriesScriptSha, List.of(hashKey), args);
+            }
+
+            if (!(result instanceof List<?> flat) || flat.isEmpty()) {
+                throw new IllegalStateException("Unexpected result type from Lua script during library scan");
+            }
+            // The first element is the next cursor, followed by the scanned entries
+            return new ScanPage(String.valueOf(flat.get(0)), toEntries(flat, 1));
+        }
+    }
+
+    /**
+     * Converts a flat [field, value, ttl, field, value, ttl, ...] script reply into entries.
+     */
+    private static List<LibraryEntry> toEntries(List<?> flat, int offset) {
+        List<LibraryEntry> entries = new ArrayList<>((flat.size() - offset) / 3);
+        for (int i = offset; i + 2 < flat.size(); i += 3) {
+            Object ttl = flat.get(i + 2);
+            entries.add(new LibraryEntry(
+                    String.valueOf(flat.get(i)),
+                    String.valueOf(flat.get(i + 1)),
+                    ttl instanceof Number number ? number.longValue() : null
+            ));
+        }
+        return entries;
+    }
+
+    /**
+     * Builds a loan from a library loans entry, or returns null if the entry is malformed or has no valid TTL.
+     */
+    private LoanDTO toLoan(String libraryId, LibraryEntry entry, LocalDateTime now) {
+        try {
+            String[] parts = entry.field().split(":");
+            if (parts.length < 4) {
+                log.warn("Invalid key format for loan in library {}: {}", libraryId, entry.field());
+                return null;
+            }
+
+            // Calculate due date based on remaining TTL
+            if (entry.ttl() == null || entry.ttl() <= 0) {
+                log.warn("No valid TTL found for loan key {} in library {}", entry.field(), libraryId);
+                return null;
+            }
+
+            return new LoanDTO(
+                    parts[1],
+                    parts[3],
+                    libraryId,
+                    toLocalDateTime(entry.value()),
+                    now.plus(entry.ttl(), ChronoUnit.MILLIS)
+            );
+        } catch (Exception e) {
+            log.error("Error processing loan entry in library {}: {} - {}",
+                    libraryId, entry.field(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Builds a reservation from a library reservations entry, or returns null if the entry is malformed or has no valid TTL.
+     */
+    private ReservationDTO toReservation(String libraryId, LibraryEntry entry, LocalDateTime now) {
+        try {
+            String[] parts = entry.field().split(":");
+            if (parts.length < 4) {
+                log.warn("Invalid key format for reservation in library {}: {}", libraryId, entry.field());
+                return null;
+            }
+
+            // If no TTL found or expired, log warning and skip
+            if (entry.ttl() == null || entry.ttl() <= 0) {
+                log.warn("No valid TTL found for reservation key {} in library {}", entry.field(), libraryId);
+                return null;
+            }
+
+            return new ReservationDTO(
+                    parts[1],
+                    parts[3],
+                    libraryId,
+                    toLocalDateTime(entry.value()),
+                    now.plus(entry.ttl(), ChronoUnit.MILLIS)
+            );
+        } catch (Exception e) {
+            log.error("Error processing reservation entry in library {}: {} - {}",
+                    libraryId, entry.field(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a raw HSCAN cursor into the opaque token handed to clients, null once the scan is complete.
+     */
+    private static String encodeCursor(String rawCursor) {
+        if (ScanParams.SCAN_POINTER_START.equals(rawCursor)) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(rawCursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes an opaque cursor token back into a raw HSCAN cursor, starting from the beginning if none is given.
+     *
+     * @throws IllegalArgumentException if the token is not a valid cursor.
+     */
+    private static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return ScanParams.SCAN_POINTER_START;
+        }
+        try {
+            String rawCursor = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            Long.parseUnsignedLong(rawCursor);
+            return rawCursor;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(String epochMillis) {
+        return toLocalDateTime(Long.parseLong(epochMillis));
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
 
     /**
      * Converts a reservation to a loan for a user in a specific library.
@@ -360,13 +634,10 @@ public class LoanRepository {
                 loadScripts();
                 return executeMarkAsLoan(jedis, libraryId, userId, bookId);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON result: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse loan conversion result from Redis", e);
         }
     }
 
-    private boolean executeMarkAsLoan(Jedis jedis, String libraryId, String userId, String bookId) throws JsonProcessingException {
+    private boolean executeMarkAsLoan(Jedis jedis, String libraryId, String userId, String bookId) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.USER_ACTIVITY.getKey(userId),
@@ -375,7 +646,8 @@ public class LoanRepository {
                 RedisKey.RESERVATION_ZSET_EXPIRATION.getKey(),
                 RedisKey.LOAN_ZSET_EXPIRATION.getKey(),
                 RedisKey.USER_HASH_ENTRY.getKey(libraryId, bookId),
-                RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId)
+                RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId),
+                RedisKey.LIBRARY_DUE_ZSET.getKey(libraryId)
         );
 
         // Prepare arguments for the script
@@ -391,26 +663,18 @@ public class LoanRepository {
         Object result = jedis.evalsha(markAsLoanScriptSha, keys, args);
 
         // Handle script result
-        if (result instanceof String jsonResult) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> resultMap = objectMapper.readValue(jsonResult, Map.class);
-
-            log.info("Loan conversion result: {}", resultMap);
-
-            // Check for errors
-            if (resultMap.containsKey("err")) {
-                String errorMessage = (String) resultMap.get("err");
-                log.warn("Loan conversion failed: {}", errorMessage);
-                throw new IllegalStateException(errorMessage);
-            }
+        LuaResultCodec.LoanResult loanResult = luaResultCodec.decodeLoan(result);
 
-            log.info("Loan successfully registered for user {}, book {}, library {}", userId, bookId, libraryId);
-            return true;
+        log.info("Loan conversion result: {}", loanResult);
+
+        // Check for errors
+        if (loanResult.isError()) {
+            log.warn("Loan conversion failed: {}", loanResult.err());
+            throw new IllegalStateException(loanResult.err());
         }
 
-        log.error("Unexpected result type from Lua script");
-        throw new IllegalStateException("Unexpected result type from Lua script");
+        log.info("Loan successfully registered for user {}, book {}, library {}", userId, bookId, libraryId);
+        return true;
     }
 
 
@@ -430,13 +694,10 @@ public class LoanRepository {
                 loadScripts();
                 return executeCompleteLoan(jedis, libraryId, userId, bookId);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON result: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse loan completion result from Redis", e);
         }
     }
 
-    private boolean executeCompleteLoan(Jedis jedis, String libraryId, String userId, String bookId) throws JsonProcessingException {
+    private boolean executeCompleteLoan(Jedis jedis, String libraryId, String userId, String bookId) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.USER_ACTIVITY.getKey(userId),
@@ -446,7 +707,8 @@ public class LoanRepository {
                 RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
                 RedisKey.USER_HASH_ENTRY.getKey(libraryId, bookId),
                 RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId),
-                RedisKey.COMPLETED_LOANS_STREAM.getKey()
+                RedisKey.COMPLETED_LOANS_STREAM.getKey(),
+                RedisKey.LIBRARY_DUE_ZSET.getKey(libraryId)
         );
 
         // Prepare arguments for the script
@@ -460,24 +722,17 @@ public class LoanRepository {
         Object result = jedis.evalsha(completeLoanScriptSha, keys, args);
 
         // Handle script result
-        if (result instanceof String jsonResult) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> resultMap = objectMapper.readValue(jsonResult, Map.class);
-
-            log.info("Loan completion result: {}", resultMap);
+        LuaResultCodec.StatusResult completionResult = luaResultCodec.decodeStatus(result);
 
-            // Check for errors
-            if (resultMap.containsKey("err")) {
-                log.warn("Loan completion failed: {}", resultMap.get("err"));
-                return false;
-            }
+        log.info("Loan completion result: {}", completionResult);
 
-            log.info("Loan successfully completed for user {}, book {}, library {}", userId, bookId, libraryId);
-            return true;
+        // Check for errors
+        if (completionResult.isError()) {
+            log.warn("Loan completion failed: {}", completionResult.err());
+            return false;
         }
 
-        log.error("Unexpected result type from Lua script during loan completion");
-        return false;
+        log.info("Loan successfully completed for user {}, book {}, library {}", userId, bookId, libraryId);
+        return true;
     }
 }
@@ -0,0 +1,112 @@
+package it.unipi.distribooked.repository.redis;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Decodes the replies of the Lua scripts into small typed results.
+ * Scripts reply with a native RESP array rather than a JSON string: the first element is a
+ * status code ({@code 0} on success, {@code 1} on failure), followed either by the result
+ * fields in a fixed position or by the error message. No JSON is encoded or parsed on the
+ * hot reservation and loan paths.
+ */
+@Slf4j
+@Component
+public class LuaResultCodec {
+
+    private static final long STATUS_OK = 0;
+
+    /**
+     * Common shape of every script reply: an error message is set only when the script failed.
+     */
+    public interface ScriptResult {
+        String err();
+
+        default boolean isError() {
+            return err() != null;
+        }
+    }
+
+    /**
+     * Reply of scripts that only report success or failure (cancel, complete, add/remove library, decrement, overdue).
+     */
+    public record StatusResult(String err) implements ScriptResult {}
+
+    /**
+     * Reply of reserve_book.lua: {0, reservationTime, expiryTime}, times in epoch millis.
+     */
+    public record ReservationResult(String err, Long reservationTime, Long expiryTime) implements ScriptResult {}
+
+    /**
+     * Reply of mark_reservation_as_loan.lua: {0, loanTime, expiryTime}, times in epoch millis.
+     */
+    public record LoanResult(String err, Long loanTime, Long expiryTime) implements ScriptResult {}
+
+    /**
+     * Reply of increment_book_copies.lua: {0, newValue}.
+     */
+    public record CopiesResult(String err, Long newValue) implements ScriptResult {}
+
+    public StatusResult decodeStatus(Object reply) {
+        List<?> fields = fields(reply, 0);
+        return isOk(fields) ? new StatusResult(null) : new StatusResult(error(fields));
+    }
+
+    public ReservationResult decodeReservation(Object reply) {
+        List<?> fields = fields(reply, 2);
+        return isOk(fields)
+                ? new ReservationResult(null, asLong(fields.get(1)), asLong(fields.get(2)))
+                : new ReservationResult(error(fields), null, null);
+    }
+
+    public LoanResult decodeLoan(Object reply) {
+        List<?> fields = fields(reply, 2);
+        return isOk(fields)
+                ? new LoanResult(null, asLong(fields.get(1)), asLong(fields.get(2)))
+                : new LoanResult(error(fields), null, null);
+    }
+
+    public CopiesResult decodeCopies(Object reply) {
+        List<?> fields = fields(reply, 1);
+        return isOk(fields)
+                ? new CopiesResult(null, asLong(fields.get(1)))
+                : new CopiesResult(error(fields), null);
+    }
+
+    /**
+     * Validates the shape of a reply and returns its elements.
+     *
+     * @param reply         The raw reply returned by EVALSHA.
+     * @param successFields The number of fields following the status code on success.
+     * @throws IllegalStateException if the reply does not follow the protocol.
+     */
+    private List<?> fields(Object reply, int successFields) {
+        if (!(reply instanceof List<?> fields) || fields.isEmpty() || !(fields.get(0) instanceof Long)) {
+            log.error("Unexpected result from Lua script: {}", reply);
+            throw new IllegalStateException("Unexpected result type from Lua script");
+        }
+        int expected = isOk(fields) ? successFields + 1 : 2;
+        if (fields.size() < expected) {
+            log.error("Lua script result has {} elements, expected at least {}: {}", fields.size(), expected, fields);
+            throw new IllegalStateException("Malformed result from Lua script");
+        }
+        return fields;
+    }
+
+    private static boolean isOk(List<?> fields) {
+        return (Long) fields.get(0) == STATUS_OK;
+    }
+
+    private static String error(List<?> fields) {
+        return String.valueOf(fields.get(1));
+    }
+
+    private static Long asLong(Object value) {
+        if (value instanceof Long number) {
+            return number;
+        }
+        return value == null ? null : Long.valueOf(value.toString());
+    }
+}
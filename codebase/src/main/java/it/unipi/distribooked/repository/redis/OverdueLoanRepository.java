@@ -1,20 +1,39 @@
 package it.unipi.distribooked.repository.redis;
 
+import it.unipi.distribooked.utils.LuaScriptLoader;
 import it.unipi.distribooked.utils.RedisKey;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Repository;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.util.Pool;
+
+import java.util.List;
 
 @Repository
 @Slf4j
 public class OverdueLoanRepository {
 
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private Pool<Jedis> jedisPool;
+
+    @Autowired
+    private LuaResultCodec luaResultCodec;
+
+    private String markOverdueScriptSha;
+
+    @PostConstruct
+    public void loadScripts() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            String markOverdueScript = LuaScriptLoader.loadScript("mark_loan_overdue.lua");
+            markOverdueScriptSha = jedis.scriptLoad(markOverdueScript);
+            log.info("Loaded mark_loan_overdue.lua script with SHA: {}", markOverdueScriptSha);
+        }
+    }
 
     /**
-     * Marks a loan as overdue in Redis
+     * Marks a loan as overdue in Redis, atomically keeping the library due date index up to date
      *
      * @param userId The ID of the user with the overdue loan
      * @param bookId The ID of the overdue book
@@ -22,15 +41,30 @@ public class OverdueLoanRepository {
      * @return true if the loan was successfully marked as overdue, false otherwise
      */
     public boolean markLoanAsOverdue(String userId, String bookId, String libraryId) {
-        String libraryOverdueKey = RedisKey.LIBRARY_OVERDUE.getKey(libraryId);
-        String loanField = RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId);
+        try (Jedis jedis = jedisPool.getResource()) {
+            try {
+                return executeMarkLoanAsOverdue(jedis, userId, bookId, libraryId);
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                loadScripts();
+                return executeMarkLoanAsOverdue(jedis, userId, bookId, libraryId);
+            }
+        }
+    }
+
+    private boolean executeMarkLoanAsOverdue(Jedis jedis, String userId, String bookId, String libraryId) {
+        List<String> keys = List.of(
+                RedisKey.LIBRARY_OVERDUE.getKey(libraryId),
+                RedisKey.LIBRARY_DUE_ZSET.getKey(libraryId),
+                RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId)
+        );
 
-        redisTemplate.opsForHash().put(libraryOverdueKey, loanField, String.valueOf(System.currentTimeMillis()));
+        List<String> args = List.of(String.valueOf(System.currentTimeMillis()));
 
-        boolean isAdded = redisTemplate.opsForHash().hasKey(libraryOverdueKey, loanField);
-        if (!isAdded) {
-            log.error("Failed to add overdue loan for user {} book {} in library {}",
-                    userId, bookId, libraryId);
+        Object result = jedis.evalsha(markOverdueScriptSha, keys, args);
+        LuaResultCodec.StatusResult response = luaResultCodec.decodeStatus(result);
+        if (response.isError()) {
+            log.error("Failed to add overdue loan for user {} book {} in library {}: {}",
+                    userId, bookId, libraryId, response.err());
             return false;
         }
 
@@ -1,7 +1,5 @@
 package it.unipi.distribooked.repository.redis;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import it.unipi.distribooked.exceptions.CannotRemoveBookException;
 import it.unipi.distribooked.exceptions.LibraryEntryAlreadyExistsException;
 import it.unipi.distribooked.exceptions.NoAvailableCopiesException;
@@ -33,6 +31,9 @@ public class RedisBookRepository {
     @Autowired
     private Pool<Jedis> jedisPool;
 
+    @Autowired
+    private LuaResultCodec luaResultCodec;
+
     private String removeBookSha;
     private String decrementCopiesScriptSha;
     private String incrementCopiesScriptSha;
@@ -74,6 +75,49 @@ public class RedisBookRepository {
         return value != null ? Integer.parseInt(value.toString()) : null;
     }
 
+    /**
+     * Gets the availability of a book in several libraries with a single MGET.
+     *
+     * @param bookId     The ID of the book.
+     * @param libraryIds The IDs of the libraries.
+     * @return The number of available copies by library ID, only for the libraries where the book is found.
+     */
+    public Map<String, Integer> getBookAvailabilityInLibraries(String bookId, List<String> libraryIds) {
+        return getBooksAvailabilityInLibraries(Map.of(bookId, libraryIds)).getOrDefault(bookId, Map.of());
+    }
+
+    /**
+     * Gets the availability of several books, each in several libraries, with a single MGET.
+     *
+     * @param libraryIdsByBook The IDs of the libraries to check for each book ID.
+     * @return For each book found in at least one library, the number of available copies by library ID.
+     */
+    public Map<String, Map<String, Integer>> getBooksAvailabilityInLibraries(Map<String, List<String>> libraryIdsByBook) {
+        List<String> bookIds = new ArrayList<>();
+        List<String> libraryIds = new ArrayList<>();
+        List<String> redisKeys = new ArrayList<>();
+        libraryIdsByBook.forEach((bookId, bookLibraryIds) -> bookLibraryIds.forEach(libraryId -> {
+            bookIds.add(bookId);
+            libraryIds.add(libraryId);
+            redisKeys.add(RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId));
+        }));
+        if (redisKeys.isEmpty()) {
+            return Map.of();
+        }
+
+        List<Object> values = redisTemplate.opsForValue().multiGet(redisKeys);
+
+        Map<String, Map<String, Integer>> availability = new HashMap<>();
+        for (int i = 0; i < redisKeys.size(); i++) {
+            Object value = values != null ? values.get(i) : null;
+            if (value != null) {
+                availability.computeIfAbsent(bookIds.get(i), bookId -> new HashMap<>())
+                        .put(libraryIds.get(i), Integer.parseInt(value.toString()));
+            }
+        }
+        return availability;
+    }
+
     /**
      * Decrements the number of available copies of a book in a library.
      *
@@ -89,13 +133,10 @@ public class RedisBookRepository {
                 loadScripts();
                 executeDecrementCopies(jedis, bookId, libraryId);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON response: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse Redis response", e);
         }
     }
 
-    private void executeDecrementCopies(Jedis jedis, String bookId, String libraryId) throws JsonProcessingException {
+    private void executeDecrementCopies(Jedis jedis, String bookId, String libraryId) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
@@ -113,16 +154,13 @@ public class RedisBookRepository {
         Object result = jedis.evalsha(decrementCopiesScriptSha, keys, args);
 
         // Parse and handle the response
-        ObjectMapper objectMapper = new ObjectMapper();
-        @SuppressWarnings("unchecked")
-        Map<String, Object> response = objectMapper.readValue(result.toString(), Map.class);
+        LuaResultCodec.StatusResult response = luaResultCodec.decodeStatus(result);
 
         log.info("Decrement copies response: {}", response);
 
-        if (response.containsKey("err")) {
-            String errorMessage = response.get("err").toString();
-            log.warn("No available copies: {}", errorMessage);
-            throw new NoAvailableCopiesException(errorMessage);
+        if (response.isError()) {
+            log.warn("No available copies: {}", response.err());
+            throw new NoAvailableCopiesException(response.err());
         }
 
         log.info("Successfully decremented copies for book {} in library {}", bookId, libraryId);
@@ -144,16 +182,13 @@ public class RedisBookRepository {
                 loadScripts();
                 executeIncrementCopies(jedis, bookId, libraryId);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON response: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse Redis response", e);
         } catch (Exception e) {
             log.error("Error incrementing copies for book {} in library {}: {}", bookId, libraryId, e.getMessage(), e);
             throw e;
         }
     }
 
-    private void executeIncrementCopies(Jedis jedis, String bookId, String libraryId) throws JsonProcessingException {
+    private void executeIncrementCopies(Jedis jedis, String bookId, String libraryId) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
@@ -171,20 +206,17 @@ public class RedisBookRepository {
         Object result = jedis.evalsha(incrementCopiesScriptSha, keys, args);
 
         // Parse and handle the response
-        ObjectMapper objectMapper = new ObjectMapper();
-        @SuppressWarnings("unchecked")
-        Map<String, Object> response = objectMapper.readValue(result.toString(), Map.class);
+        LuaResultCodec.CopiesResult response = luaResultCodec.decodeCopies(result);
 
         log.info("Increment copies response: {}", response);
 
-        if (response.containsKey("err")) {
-            String errorMessage = response.get("err").toString();
-            log.warn("Increment copies failed: {}", errorMessage);
-            throw new IllegalStateException(errorMessage);
+        if (response.isError()) {
+            log.warn("Increment copies failed: {}", response.err());
+            throw new IllegalStateException(response.err());
         }
 
         log.debug("Incremented copies for book {} in library {} - new value: {}",
-                bookId, libraryId, response.get("newValue"));
+                bookId, libraryId, response.newValue());
     }
 
     /**
@@ -203,13 +235,10 @@ public class RedisBookRepository {
                 loadScripts();
                 executeAddLibrary(jedis, bookId, libraryId, initialValue);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON response: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse Redis response", e);
         }
     }
 
-    private void executeAddLibrary(Jedis jedis, String bookId, String libraryId, Integer initialValue) throws JsonProcessingException {
+    private void executeAddLibrary(Jedis jedis, String bookId, String libraryId, Integer initialValue) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
@@ -228,13 +257,11 @@ public class RedisBookRepository {
         Object result = jedis.evalsha(addLibraryScriptSha, keys, args);
 
         // Parse and handle the response
-        ObjectMapper objectMapper = new ObjectMapper();
-        @SuppressWarnings("unchecked")
-        Map<String, Object> response = objectMapper.readValue(result.toString(), Map.class);
+        LuaResultCodec.StatusResult response = luaResultCodec.decodeStatus(result);
 
         log.info("Add library response: {}", response);
 
-        if (response.containsKey("err")) {
+        if (response.isError()) {
             log.warn("Library entry already exists for book {} in library {}", bookId, libraryId);
             throw new LibraryEntryAlreadyExistsException(bookId, libraryId);
         }
@@ -257,13 +284,10 @@ public class RedisBookRepository {
                 loadScripts();
                 executeRemoveLibraryEntry(jedis, bookId, libraryId, totalCopies);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON response: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse remove result from Redis", e);
         }
     }
 
-    private void executeRemoveLibraryEntry(Jedis jedis, String bookId, String libraryId, Integer totalCopies) throws JsonProcessingException {
+    private void executeRemoveLibraryEntry(Jedis jedis, String bookId, String libraryId, Integer totalCopies) {
         // Construct Redis keys dynamically
         List<String> keys = List.of(
                 RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
@@ -282,28 +306,21 @@ public class RedisBookRepository {
         Object result = jedis.evalsha(removeBookSha, keys, args);
 
         // Handle script result
-        if (result instanceof String jsonResult) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> resultMap = objectMapper.readValue(jsonResult, Map.class);
+        LuaResultCodec.StatusResult response = luaResultCodec.decodeStatus(result);
 
-            log.info("Remove library entry response: {}", resultMap);
+        log.info("Remove library entry response: {}", response);
 
-            if (resultMap.containsKey("err")) {
-                String errorMessage = (String) resultMap.get("err");
-                log.warn("Failed to remove library entry: {}", errorMessage);
+        if (response.isError()) {
+            String errorMessage = response.err();
+            log.warn("Failed to remove library entry: {}", errorMessage);
 
-                if (errorMessage.contains("All copies must be available")) {
-                    throw new CannotRemoveBookException(errorMessage);
-                }
-                throw new NoSuchElementException(errorMessage);
+            if (errorMessage.contains("All copies must be available")) {
+                throw new CannotRemoveBookException(errorMessage);
             }
-
-            log.info("Successfully removed library entry for book {} in library {}", bookId, libraryId);
-        } else {
-            log.error("Unexpected result type from Redis script");
-            throw new IllegalStateException("Unexpected result type from Redis script");
+            throw new NoSuchElementException(errorMessage);
         }
+
+        log.info("Successfully removed library entry for book {} in library {}", bookId, libraryId);
     }
 
 }
@@ -1,8 +1,10 @@
 package it.unipi.distribooked.repository.redis;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import it.unipi.distribooked.model.UserBookActivity;
 import it.unipi.distribooked.utils.RedisKey;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.HashOperations;
@@ -19,17 +21,26 @@ public class RedisUserRepository {
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Reader built once from the shared mapper and reused for every activity entry
+    private ObjectReader activityReader;
+
+    @PostConstruct
+    public void init() {
+        activityReader = objectMapper.readerFor(UserBookActivity.class);
+    }
+
     public Map<String, UserBookActivity> getUserBookActivities(String userId) {
         HashOperations<String, String, String> hashOps = redisTemplate.opsForHash(); // Hash operations for string keys
         Map<String, String> rawData = hashOps.entries(RedisKey.USER_ACTIVITY.getKey(userId)); // Get all entries in the hash
 
         Map<String, UserBookActivity> result = new HashMap<>(); // Map to store deserialized activities
 
-        ObjectMapper objectMapper = new ObjectMapper();
-
         for (Map.Entry<String, String> entry : rawData.entrySet()) { // Deserialize each entry
             try {
-                UserBookActivity activity = objectMapper.readValue(entry.getValue(), UserBookActivity.class);
+                UserBookActivity activity = activityReader.readValue(entry.getValue());
                 result.put(entry.getKey(), activity);
             } catch (Exception e) {
                 log.error("Error deserializing book activity for key: {}", entry.getKey(), e);
@@ -1,7 +1,5 @@
 package it.unipi.distribooked.repository.redis;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import it.unipi.distribooked.exceptions.ReservationConflictException;
 import it.unipi.distribooked.model.Reservation;
 import it.unipi.distribooked.utils.LuaScriptLoader;
@@ -13,13 +11,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Repository;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.util.Pool;
 
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -35,6 +36,9 @@ public class ReservationRepository {
     @Autowired
     private Pool<Jedis> jedisPool;
 
+    @Autowired
+    private LuaResultCodec luaResultCodec;
+
     private String reserveBookScriptSha;
 
     private String cancelBookReservationScriptSha;
@@ -78,89 +82,156 @@ public class ReservationRepository {
                 loadScripts();
                 return executeReservation(jedis, userId, bookId, libraryId, bookTitle, libraryName);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON result: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse reservation result from Redis", e);
         }
     }
 
     private Reservation executeReservation(Jedis jedis, String userId, String bookId, String libraryId,
-                                           String bookTitle, String libraryName) throws JsonProcessingException {
-        // Construct Redis keys dynamically
-        String availabilityKey = RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId);
-        String userResLoansKey = RedisKey.USER_ACTIVITY.getKey(userId);
-        String libraryResKey = RedisKey.LIBRARY_RESERVATIONS.getKey(libraryId);
-        String userReservationField = RedisKey.USER_HASH_ENTRY.getKey(libraryId, bookId);
-        String libraryReservationField = RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId);
-        String expirationZSetKey = RedisKey.RESERVATION_ZSET_EXPIRATION.getKey();
-        String zsetMember = RedisKey.ZSET_ENTRY.getKey(userId, bookId, libraryId);
-
-        // Current timestamp and expiry calculation
-        long currentTime = System.currentTimeMillis();
-        long reservationExpiry = TimeUnit.DAYS.toSeconds(RESERVATION_EXPIRY_DAYS);
-
+                                           String bookTitle, String libraryName) {
         // Execute Lua script using its SHA
         Object result = jedis.evalsha(
                 reserveBookScriptSha,
-                List.of(
-                        availabilityKey,
-                        userResLoansKey,
-                        libraryResKey,
-                        expirationZSetKey,
-                        userReservationField,
-                        libraryReservationField
-                ),
-                List.of(
-                        String.valueOf(MAX_USER_RESERVATIONS),
-                        userId,
-                        bookId,
-                        libraryId,
-                        String.valueOf(currentTime), // time in seconds
-                        String.valueOf(reservationExpiry), // expiry in seconds
-                        bookTitle,
-                        libraryName,
-                        zsetMember
-                )
+                reservationKeys(userId, bookId, libraryId),
+                reservationArgs(userId, bookId, libraryId, bookTitle, libraryName, System.currentTimeMillis())
         );
 
         // Handle script result
-        if (result instanceof List<?> listResult && listResult.isEmpty()) {
-            log.warn("Reservation script returned an empty result");
-            throw new IllegalStateException("Unexpected reservation result: empty response");
-        } else if (result instanceof String jsonResult) {
-            // Parse JSON string
-            ObjectMapper objectMapper = new ObjectMapper();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> resultMap = objectMapper.readValue(jsonResult, Map.class);
-
-            log.info("Reservation result: {}", resultMap);
-
-            // Check for error
-            if (resultMap.containsKey("err")) {
-                String errorMessage = (String) resultMap.get("err");
-                log.warn("Reservation failed: {}", errorMessage);
-                throw new ReservationConflictException(errorMessage);
+        LuaResultCodec.ReservationResult reservationResult = luaResultCodec.decodeReservation(result);
+
+        log.info("Reservation result: {}", reservationResult);
+
+        // Check for error
+        if (reservationResult.isError()) {
+            log.warn("Reservation failed: {}", reservationResult.err());
+            throw new ReservationConflictException(reservationResult.err());
+        }
+
+        return toReservation(userId, bookId, libraryId, reservationResult);
+    }
+
+    /**
+     * A single book to reserve as part of a batch, with the denormalized data stored alongside the reservation.
+     */
+    public record ReservationCommand(String bookId, String libraryId, String bookTitle, String libraryName) {}
+
+    /**
+     * Outcome of a single reservation of a batch: either the reservation or the reason it failed.
+     */
+    public record ReservationOutcome(Reservation reservation, String error) {}
+
+    /**
+     * Reserves several books for a user by pipelining one reserve_book.lua invocation per book
+     * on a single connection, so the whole batch costs one round trip.
+     * Reservations are attempted in order and each one is atomic on its own: a failure does not
+     * affect the other items of the batch.
+     *
+     * @param userId   The ID of the user making the reservations
+     * @param commands The books to reserve
+     * @return The outcome of each reservation, in the same order as the commands
+     */
+    public List<ReservationOutcome> reserveBooks(String userId, List<ReservationCommand> commands) {
+        if (commands.isEmpty()) {
+            return List.of();
+        }
+        try (Jedis jedis = jedisPool.getResource()) {
+            try {
+                return executeReservations(jedis, userId, commands);
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                // The script cache was flushed, so none of the reservations ran: reload and replay the batch
+                loadScripts();
+                return executeReservations(jedis, userId, commands);
             }
+        }
+    }
+
+    private List<ReservationOutcome> executeReservations(Jedis jedis, String userId, List<ReservationCommand> commands) {
+        long currentTime = System.currentTimeMillis();
 
-            // Create and return Reservation object
-            return new Reservation(
-                    null,
-                    new ObjectId(userId),
-                    new ObjectId(bookId),
-                    new ObjectId(libraryId),
-                    LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(((Number) resultMap.get("reservationTime")).longValue()),
-                            ZoneOffset.UTC
-                    ),
-                    LocalDateTime.ofInstant(
-                            Instant.ofEpochMilli(((Number) resultMap.get("expiryTime")).longValue()),
-                            ZoneOffset.UTC
-                    )
-            );
+        List<Response<Object>> responses = new ArrayList<>(commands.size());
+        Pipeline pipeline = jedis.pipelined();
+        for (ReservationCommand command : commands) {
+            responses.add(pipeline.evalsha(
+                    reserveBookScriptSha,
+                    reservationKeys(userId, command.bookId(), command.libraryId()),
+                    reservationArgs(userId, command.bookId(), command.libraryId(),
+                            command.bookTitle(), command.libraryName(), currentTime)
+            ));
         }
+        pipeline.sync();
+
+        List<ReservationOutcome> outcomes = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            ReservationCommand command = commands.get(i);
+            LuaResultCodec.ReservationResult reservationResult;
+            try {
+                reservationResult = luaResultCodec.decodeReservation(responses.get(i).get());
+            } catch (redis.clients.jedis.exceptions.JedisNoScriptException e) {
+                throw e;
+            } catch (JedisDataException e) {
+                log.error("Error reserving book {} for user {}: {}", command.bookId(), userId, e.getMessage());
+                outcomes.add(new ReservationOutcome(null, "Unexpected reservation result"));
+                continue;
+            }
 
-        log.error("Error reserving book {} for user {}", bookId, userId);
-        throw new IllegalStateException("Unexpected reservation result");
+            if (reservationResult.isError()) {
+                log.warn("Reservation of book {} in library {} failed: {}",
+                        command.bookId(), command.libraryId(), reservationResult.err());
+                outcomes.add(new ReservationOutcome(null, reservationResult.err()));
+            } else {
+                outcomes.add(new ReservationOutcome(
+                        toReservation(userId, command.bookId(), command.libraryId(), reservationResult), null));
+            }
+        }
+
+        log.info("Batch reservation for user {}: {} of {} books reserved", userId,
+                outcomes.stream().filter(outcome -> outcome.error() == null).count(), commands.size());
+        return outcomes;
+    }
+
+    private static List<String> reservationKeys(String userId, String bookId, String libraryId) {
+        return List.of(
+                RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId),
+                RedisKey.USER_ACTIVITY.getKey(userId),
+                RedisKey.LIBRARY_RESERVATIONS.getKey(libraryId),
+                RedisKey.RESERVATION_ZSET_EXPIRATION.getKey(),
+                RedisKey.USER_HASH_ENTRY.getKey(libraryId, bookId),
+                RedisKey.LIBRARY_HASH_ENTRY.getKey(userId, bookId)
+        );
+    }
+
+    private static List<String> reservationArgs(String userId, String bookId, String libraryId,
+                                                String bookTitle, String libraryName, long currentTime) {
+        // Expiry calculation
+        long reservationExpiry = TimeUnit.DAYS.toSeconds(RESERVATION_EXPIRY_DAYS);
+
+        return List.of(
+                String.valueOf(MAX_USER_RESERVATIONS),
+                userId,
+                bookId,
+                libraryId,
+                String.valueOf(currentTime), // time in milliseconds
+                String.valueOf(reservationExpiry), // expiry in seconds
+                bookTitle,
+                libraryName,
+                RedisKey.ZSET_ENTRY.getKey(userId, bookId, libraryId)
+        );
+    }
+
+    private static Reservation toReservation(String userId, String bookId, String libraryId,
+                                             LuaResultCodec.ReservationResult reservationResult) {
+        return new Reservation(
+                null,
+                new ObjectId(userId),
+                new ObjectId(bookId),
+                new ObjectId(libraryId),
+                LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(reservationResult.reservationTime()),
+                        ZoneOffset.UTC
+                ),
+                LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(reservationResult.expiryTime()),
+                        ZoneOffset.UTC
+                )
+        );
     }
 
     /**
@@ -179,13 +250,10 @@ public class ReservationRepository {
                 loadScripts();
                 return executeCancellation(jedis, userId, bookId, libraryId);
             }
-        } catch (JsonProcessingException e) {
-            log.error("Error parsing JSON result: {}", e.getMessage(), e);
-            throw new IllegalStateException("Failed to parse cancellation result from Redis", e);
         }
     }
 
-    private boolean executeCancellation(Jedis jedis, String userId, String bookId, String libraryId) throws JsonProcessingException {
+    private boolean executeCancellation(Jedis jedis, String userId, String bookId, String libraryId) {
         // Construct Redis keys dynamically
         String availabilityKey = RedisKey.BOOK_AVAILABILITY.getKey(bookId, libraryId);
         String userResLoansKey = RedisKey.USER_ACTIVITY.getKey(userId);
@@ -215,25 +283,17 @@ public class ReservationRepository {
         );
 
         // Handle script result
-        if (result instanceof String jsonResult) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            @SuppressWarnings("unchecked")
-            Map<String, Object> resultMap = objectMapper.readValue(jsonResult, Map.class);
-
-            log.info("Cancellation result: {}", resultMap);
-
-            // Check for errors
-            if (resultMap.containsKey("err")) {
-                String errorMessage = (String) resultMap.get("err");
-                log.warn("Cancellation failed: {}", errorMessage);
-                return false;
-            }
+        LuaResultCodec.StatusResult cancellationResult = luaResultCodec.decodeStatus(result);
+
+        log.info("Cancellation result: {}", cancellationResult);
 
-            log.info("Cancellation successful for user {}, book {}, library {}", userId, bookId, libraryId);
-            return true;
+        // Check for errors
+        if (cancellationResult.isError()) {
+            log.warn("Cancellation failed: {}", cancellationResult.err());
+            return false;
         }
 
-        log.error("Unexpected result during cancellation for user {}, book {}, library {}", userId, bookId, libraryId);
-        return false;
+        log.info("Cancellation successful for user {}, book {}, library {}", userId, bookId, libraryId);
+        return true;
     }
 }
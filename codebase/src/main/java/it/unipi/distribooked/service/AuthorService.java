@@ -2,6 +2,7 @@ package it.unipi.distribooked.service;
 
 import it.unipi.distribooked.dto.AuthorDTO;
 import it.unipi.distribooked.dto.AuthorSearchDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.mapper.AuthorMapper;
 import it.unipi.distribooked.model.Author;
 import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
@@ -10,13 +11,9 @@ import it.unipi.distribooked.repository.mongo.views.AuthorSearchView;
 import it.unipi.distribooked.utils.ObjectIdConverter;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
 
 @Service
@@ -68,20 +65,26 @@ public class AuthorService {
     }
 
     /**
-     * Retrieves a paginated list of books written by an author.
+     * Retrieves a page of the books written by an author, in the order they were added.
+     * Pages are read from the author_books buckets starting from the cursor, so every page costs the same.
      *
      * @param authorId The ID of the author.
-     * @param page The page number (starting from 0).
-     * @return A list of books written by the author.
+     * @param cursor The cursor returned by the previous page, or null for the first page.
+     * @param size The number of books per page.
+     * @return A page of books written by the author and the cursor of the next page.
      * @throws NoSuchElementException If the author is not found.
      */
-    public List<EmbeddedBookAuthor> getAuthorBooks(String authorId, int page) {
+    public CursorPageDTO<EmbeddedBookAuthor> getAuthorBooks(String authorId, String cursor, int size) {
         ObjectId objectId = convertToObjectId(authorId); // Convert authorId to ObjectId
-        int skip = page * 20; // Calculate the number of documents to skip
 
-        return authorRepository.findByIdWithBooksSlice(objectId, skip)
-                .map(Author::getBooks)
-                .orElseThrow(() -> new NoSuchElementException("Author not found for ID: " + authorId));
+        CursorPageDTO<EmbeddedBookAuthor> books = authorRepository.findAuthorBooks(objectId, cursor, size);
+
+        // An empty first page can also mean that the author does not exist
+        if (books.getContent().isEmpty() && cursor == null && !authorRepository.existsById(objectId)) {
+            throw new NoSuchElementException("Author not found for ID: " + authorId);
+        }
+
+        return books;
     }
 
     /**
@@ -1,10 +1,12 @@
 package it.unipi.distribooked.service;
 
+import it.unipi.distribooked.dto.AvailabilityMatrixDTO;
 import it.unipi.distribooked.dto.BookCatalogueDTO;
 import it.unipi.distribooked.dto.BookDTO;
 import it.unipi.distribooked.dto.BooksByAgeGroupDTO;
+import it.unipi.distribooked.dto.CursorPageDTO;
+import it.unipi.distribooked.dto.EmbeddedLibraryDTO;
 import it.unipi.distribooked.mapper.BookMapper;
-import it.unipi.distribooked.model.Author;
 import it.unipi.distribooked.model.Book;
 import it.unipi.distribooked.repository.mongo.AuthorRepository;
 import it.unipi.distribooked.repository.mongo.UserRepository;
@@ -15,15 +17,19 @@ import it.unipi.distribooked.utils.ObjectIdConverter;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.function.LongSupplier;
 
 /**
  * The BookService class handles the business logic related to books.
@@ -47,107 +53,171 @@ public class BookService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CatalogueCountService catalogueCountService;
+
     /**
      * Retrieve a list of all books in the catalog.
      *
+     * The total number of books comes from CatalogueCountService, so that no count query runs with the page.
+     *
      * @return A paginated list of BookCatalogueDTO representing all books.
      */
     public Page<BookCatalogueDTO> getAllBooks(Pageable pageable) {
         // Use the projection to fetch only the required fields
-        Page<BookCatalogueView> bookCatalogueViews = bookRepository.findAllBy(pageable);
+        Slice<BookCatalogueView> bookCatalogueViews = bookRepository.findAllBy(pageable);
 
         // Map the projection to DTOs
-        return bookCatalogueViews.map(bookMapper::toBookCatalogueDTO);
+        return toPage(bookCatalogueViews, catalogueCountService::countAllBooks);
     }
 
     public Page<BookCatalogueDTO> filterBooks(String category, Boolean sortByPopularity, Pageable pageable) {
         if (category != null && Boolean.TRUE.equals(sortByPopularity)) {
-            return bookRepository.findBooksByCategoryOrderByReadingsCount(category, pageable)
-                    .map(bookMapper::toBookCatalogueDTO);
+            return toPage(bookRepository.findBooksByCategoryOrderByReadingsCount(category, pageable),
+                    () -> catalogueCountService.countBooksInCategory(category));
         } else if (category != null) {
-            return bookRepository.findByCategories(category, pageable)
-                    .map(bookMapper::toBookCatalogueDTO);
+            return toPage(bookRepository.findByCategories(category, pageable),
+                    () -> catalogueCountService.countBooksInCategory(category));
         } else if (Boolean.TRUE.equals(sortByPopularity)) {
-            return bookRepository.findAllByOrderByReadingsCountDesc(pageable)
-                    .map(bookMapper::toBookCatalogueDTO);
+            return toPage(bookRepository.findAllByOrderByReadingsCountDesc(pageable),
+                    catalogueCountService::countAllBooks);
         }
 
         throw new IllegalArgumentException("At least one filter must be specified");
     }
 
     /**
-     * Search books by title and optionally by author.
-     *
-     * This method assumes that the dataset in the database is well-structured and does not contain duplicate
-     * entries for books with the same title. This ensures that MongoDB will never need to transfer an excessive
-     * number of documents over the network, making it unnecessary to implement additional checks or pagination
-     * for title-based queries.
+     * Turns a slice of the catalogue into a page, asking for the total only when it cannot be deduced
+     * from the slice itself (e.g. on the last page).
+     */
+    private Page<BookCatalogueDTO> toPage(Slice<BookCatalogueView> slice, LongSupplier total) {
+        return PageableExecutionUtils.getPage(slice.getContent(), slice.getPageable(), total)
+                .map(bookMapper::toBookCatalogueDTO);
+    }
+
+    /**
+     * Retrieve a page of the catalog with keyset pagination, sorted by ID.
      *
-     * This method provides flexible searching capabilities:
-     * - If both `title` and `author` are provided, it searches for books written by the specified
-     *   author and filters them by title.
-     * - If only `title` is provided, it retrieves books matching the title.
+     * @param cursor The cursor returned by the previous page, or null for the first page.
+     * @param size   The number of books per page.
+     * @return A page of BookCatalogueDTO and the cursor of the next page.
+     */
+    public CursorPageDTO<BookCatalogueDTO> getAllBooks(String cursor, int size) {
+        return toCatalogueDTOs(bookRepository.findCataloguePage(null, false, cursor, size));
+    }
+
+    /**
+     * Retrieve a page of books filtered by category and/or sorted by popularity, with keyset pagination.
      *
-     * @param title  Mandatory filter for the book title.
-     * @param author Optional filter for the author's name.
-     * @return A list of books matching the search criteria, represented as `BookCatalogueDTO`.
-     * @throws IllegalArgumentException if the title is not provided.
+     * @param category         Optional filter by book category.
+     * @param sortByPopularity Optional flag to sort results by popularity.
+     * @param cursor           The cursor returned by the previous page, or null for the first page.
+     * @param size             The number of books per page.
+     * @return A page of BookCatalogueDTO and the cursor of the next page.
      */
-    public Page<BookCatalogueDTO> searchBooks(String title, String author, int page) {
-        Pageable pageable = PageRequest.of(page, 20);
-        return (author != null)
-                ? searchByAuthorAndTitle(author, title, pageable)
-                : searchByTitle(title, pageable);
+    public CursorPageDTO<BookCatalogueDTO> filterBooks(String category, Boolean sortByPopularity, String cursor, int size) {
+        if (category == null && !Boolean.TRUE.equals(sortByPopularity)) {
+            throw new IllegalArgumentException("At least one filter must be specified");
+        }
+
+        return toCatalogueDTOs(bookRepository.findCataloguePage(
+                category, Boolean.TRUE.equals(sortByPopularity), cursor, size));
     }
 
-    private Page<BookCatalogueDTO> searchByTitle(String title, Pageable pageable) {
-        //Page<BookCatalogueView> bookPage = bookRepository.findByTitle(title, pageable);
+    private CursorPageDTO<BookCatalogueDTO> toCatalogueDTOs(CursorPageDTO<Book> books) {
+        return new CursorPageDTO<>(
+                books.getContent().stream()
+                        .map(bookMapper::toBookCatalogueDTO)
+                        .toList(),
+                books.getNextCursor());
+    }
 
-        Page<BookCatalogueView> bookPage = bookRepository.findByTitleWithCollation(title, pageable);
+    /**
+     * Search books by title and optionally by author.
+     *
+     * This method provides two kinds of search, both served by indexes, so their latency does not depend
+     * on the size of the catalogue:
+     * - full-text (default): books whose title or author names contain any of the words of `title`,
+     *   ranked by relevance, i.e. an exact title match comes first;
+     * - prefix: books whose title starts with `title`, case-insensitively, sorted by title, for typeahead.
+     * If `author` is provided, only the books written by that author are returned.
+     *
+     * @param title  Mandatory words, or beginning, of the book title.
+     * @param author Optional filter for the author's full name.
+     * @param prefix Whether to search the beginning of the title instead of words.
+     * @param page   The page of results, of 20 books each.
+     * @return A page of books matching the search criteria, represented as `BookCatalogueDTO`.
+     * @throws NoSuchElementException if no book matches.
+     */
+    public Page<BookCatalogueDTO> searchBooks(String title, String author, boolean prefix, int page) {
+        Pageable pageable = PageRequest.of(page, 20);
+        Page<Book> bookPage = bookRepository.searchBooks(title, author, prefix, pageable);
 
         if (bookPage.isEmpty()) {
-            throw new NoSuchElementException("No books found for title '" + title + "'.");
+            throw new NoSuchElementException(author != null
+                    ? "No books found for author '" + author + "' and title '" + title + "'."
+                    : "No books found for title '" + title + "'.");
         }
 
         return bookPage.map(bookMapper::toBookCatalogueDTO);
     }
 
-    private Page<BookCatalogueDTO> searchByAuthorAndTitle(String authorName, String title, Pageable pageable) {
-        Page<Author> authorPage = authorRepository.findBooksByAuthorAndTitle(authorName, title, pageable);
 
-        if (authorPage.isEmpty()) {
-            throw new NoSuchElementException("No books found for author '" + authorName + "' and title '" + title + "'.");
+    /**
+     * Get the details of a book and, if a position is given, its libraries around that position.
+     *
+     * With live availability, the copies that can be reserved right now in each library are read from Redis
+     * with a single MGET, and the availability filter applies to them instead of the copies stored in MongoDB.
+     * Libraries without an availability entry in Redis are left without available copies.
+     *
+     * @param id               The ID of the book.
+     * @param latitude         Optional latitude of the position.
+     * @param longitude        Optional longitude of the position.
+     * @param radius           Optional maximum distance in meters of the libraries from the position.
+     * @param availableOnly    Whether to keep only the libraries with copies of the book, with a position.
+     * @param nearest          Optional maximum number of libraries to keep, the nearest ones, with a position.
+     * @param liveAvailability Whether to add the live availability to each library.
+     * @return The book, with its libraries sorted by distance if a position is given.
+     * @throws NoSuchElementException if the book is not found.
+     */
+    public BookDTO getBookByIdWithLibraries(String id, Double latitude, Double longitude, Integer radius,
+                                            boolean availableOnly, Integer nearest, boolean liveAvailability) {
+        ObjectId objectId = ObjectIdConverter.convert(id);
+
+        if (!liveAvailability) {
+            Book book = getBookBasedOnGeospatialCriteria(objectId, latitude, longitude, radius, availableOnly, nearest);
+            return bookMapper.toBookDTO(book);
         }
 
-        // Manually extract and map matching books
-        List<BookCatalogueDTO> matchingBooks = authorPage.stream()
-                .flatMap(author -> author.getBooks().stream()
-                        .filter(book -> book.getTitle().toLowerCase().contains(title.toLowerCase()))
-                        .map(embeddedBook -> {
-                            BookCatalogueDTO dto = new BookCatalogueDTO();
-                            dto.setId(embeddedBook.getId() != null ? embeddedBook.getId().toString() : null);
-                            dto.setTitle(embeddedBook.getTitle());
-                            // Set other properties as needed
-                            return dto;
-                        }))
-                .collect(Collectors.toList());
-
-        return new PageImpl<>(matchingBooks, pageable, matchingBooks.size());
-    }
+        // The libraries without available copies can only be told apart once their live availability is known
+        Book book = getBookBasedOnGeospatialCriteria(objectId, latitude, longitude, radius, false,
+                availableOnly ? null : nearest);
+        BookDTO bookDTO = bookMapper.toBookDTO(book);
+        if (bookDTO.getBranches() == null) {
+            return bookDTO;
+        }
 
+        List<String> libraryIds = bookDTO.getBranches().stream().map(EmbeddedLibraryDTO::getId).toList();
+        Map<String, Integer> availability = redisBookRepository.getBookAvailabilityInLibraries(id, libraryIds);
+        // No availability key means the library does not hold the book, as in the availability matrix
+        bookDTO.getBranches().forEach(branch -> branch.setAvailableCopies(availability.get(branch.getId())));
 
-    public BookDTO getBookByIdWithLibraries(String id, Double latitude, Double longitude, Integer radius) {
-        ObjectId objectId = ObjectIdConverter.convert(id);
-        Book book = getBookBasedOnGeospatialCriteria(objectId, latitude, longitude, radius);
-        return bookMapper.toBookDTO(book);
+        if (availableOnly) {
+            bookDTO.setBranches(bookDTO.getBranches().stream()
+                    .filter(branch -> branch.getAvailableCopies() != null && branch.getAvailableCopies() > 0)
+                    .limit(nearest != null ? nearest : Long.MAX_VALUE)
+                    .toList());
+        }
+        return bookDTO;
     }
 
-    private Book getBookBasedOnGeospatialCriteria(ObjectId objectId, Double latitude, Double longitude, Integer radius) {
+    private Book getBookBasedOnGeospatialCriteria(ObjectId objectId, Double latitude, Double longitude, Integer radius,
+                                                  boolean availableOnly, Integer nearest) {
         Book book;
 
         // Perform a single query depending on whether coordinates are provided
         if (latitude != null && longitude != null) {
-            book = bookRepository.findBookWithNearbyLibraries(objectId, longitude, latitude, radius);
+            book = bookRepository.findBookWithNearbyLibraries(objectId, longitude, latitude, radius, availableOnly, nearest);
         } else {
             // Query the book without geospatial filtering
             book = bookRepository.findById(objectId)
@@ -161,6 +231,49 @@ public class BookService {
         return book;
     }
 
+    /**
+     * Get the availability of several books in several libraries, reading all the counts from Redis
+     * with a single MGET.
+     *
+     * @param bookIds    The IDs of the books.
+     * @param libraryIds Optional IDs of the libraries; if not provided, the libraries holding any of the books.
+     * @return The copies that can be reserved right now, by book (rows) and library (columns).
+     */
+    public AvailabilityMatrixDTO getBooksAvailability(List<String> bookIds, List<String> libraryIds) {
+        List<String> rows = bookIds.stream().distinct().toList();
+
+        Map<String, List<String>> libraryIdsByBook = new LinkedHashMap<>();
+        List<String> columns;
+        if (libraryIds != null && !libraryIds.isEmpty()) {
+            columns = libraryIds.stream().distinct().toList();
+            rows.forEach(bookId -> libraryIdsByBook.put(bookId, columns));
+        } else {
+            // The branches of the books, with a single query
+            Map<ObjectId, Map<ObjectId, Integer>> branchesByBook = bookRepository.findCopiesByLibrary(
+                    rows.stream().map(ObjectIdConverter::convert).toList());
+
+            Set<String> allLibraryIds = new LinkedHashSet<>();
+            rows.forEach(bookId -> {
+                List<String> branchIds = branchesByBook.getOrDefault(new ObjectId(bookId), Map.of()).keySet().stream()
+                        .map(ObjectId::toHexString)
+                        .toList();
+                libraryIdsByBook.put(bookId, branchIds);
+                allLibraryIds.addAll(branchIds);
+            });
+            columns = List.copyOf(allLibraryIds);
+        }
+
+        Map<String, Map<String, Integer>> availability = redisBookRepository.getBooksAvailabilityInLibraries(libraryIdsByBook);
+
+        List<List<Integer>> copies = rows.stream()
+                .map(bookId -> {
+                    Map<String, Integer> bookAvailability = availability.getOrDefault(bookId, Map.of());
+                    return columns.stream().map(bookAvailability::get).toList();
+                })
+                .toList();
+        return new AvailabilityMatrixDTO(rows, columns, copies);
+    }
+
     /**
      * Get the availability of a specific book in a specific library.
      *
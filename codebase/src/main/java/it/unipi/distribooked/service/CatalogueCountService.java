@@ -0,0 +1,114 @@
+package it.unipi.distribooked.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import it.unipi.distribooked.model.Book;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Service providing the total number of books behind the offset-paginated catalogue pages, so that listing
+ * a page does not also run a countDocuments, which costs as much as the page itself.
+ *
+ * Counts are cached by query shape, i.e. the whole catalogue or a single category. A count older than
+ * catalogue.count.refresh-after-ms is reloaded in the background on its next access, while the previous value
+ * keeps being served. Adding a book invalidates the counts it affects.
+ *
+ * With catalogue.count.estimated=true the count of the whole catalogue is read from the collection metadata
+ * (estimatedDocumentCount) instead of being counted, at the price of being approximate.
+ */
+@Service
+public class CatalogueCountService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueCountService.class);
+
+    private static final String ALL_BOOKS = "all";
+    private static final String CATEGORY_PREFIX = "category:";
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${catalogue.count.refresh-after-ms:60000}")
+    private long refreshAfterMs;
+
+    @Value("${catalogue.count.expire-after-ms:3600000}") // upper bound on the staleness of a count nobody reads
+    private long expireAfterMs;
+
+    @Value("${catalogue.count.maximum-size:1000}")
+    private long maximumSize;
+
+    @Value("${catalogue.count.estimated:false}")
+    private boolean estimated;
+
+    private LoadingCache<String, Long> counts;
+
+    @PostConstruct
+    public void init() {
+        counts = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(Duration.ofMillis(refreshAfterMs))
+                .expireAfterWrite(Duration.ofMillis(expireAfterMs))
+                .recordStats()
+                .build(this::count);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, counts, "catalogueCounts");
+    }
+
+    /**
+     * @return The number of books in the catalogue.
+     */
+    public long countAllBooks() {
+        return counts.get(ALL_BOOKS);
+    }
+
+    /**
+     * @return The number of books in the given category.
+     */
+    public long countBooksInCategory(String category) {
+        return counts.get(CATEGORY_PREFIX + category);
+    }
+
+    /**
+     * Invalidates the counts affected by a book added to (or removed from) the catalogue.
+     *
+     * @param categories The categories of the book.
+     */
+    public void evictBook(Collection<String> categories) {
+        counts.invalidate(ALL_BOOKS);
+        if (categories != null) {
+            categories.forEach(category -> counts.invalidate(CATEGORY_PREFIX + category));
+        }
+    }
+
+    private long count(String key) {
+        long start = System.currentTimeMillis();
+
+        long count;
+        if (ALL_BOOKS.equals(key)) {
+            count = estimated
+                    ? mongoTemplate.estimatedCount(Book.class)
+                    : mongoTemplate.count(new Query(), Book.class);
+        } else {
+            String category = key.substring(CATEGORY_PREFIX.length());
+            count = mongoTemplate.count(new Query(Criteria.where("categories").is(category)), Book.class);
+        }
+
+        logger.debug("Counted {} books for '{}' in {} ms", count, key, System.currentTimeMillis() - start);
+        return count;
+    }
+}
@@ -0,0 +1,123 @@
+package it.unipi.distribooked.service;
+
+import it.unipi.distribooked.repository.mongo.BookRepository;
+import it.unipi.distribooked.repository.mongo.LibraryRepository;
+import it.unipi.distribooked.repository.mongo.views.BookTitleView;
+import it.unipi.distribooked.repository.mongo.views.LibraryNameView;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service resolving book titles and library names, which are needed on every reservation.
+ * Since they almost never change, they are kept in bounded in-process caches (see CacheConfig)
+ * and MongoDB is only queried, with a single $in query, for the identifiers that are not cached.
+ * Missing books and libraries are not cached, so that they become visible as soon as they are added.
+ */
+@Service
+public class CatalogueLookupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogueLookupService.class);
+
+    public static final String BOOK_TITLES_CACHE = "bookTitles";
+    public static final String LIBRARY_NAMES_CACHE = "libraryNames";
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private LibraryRepository libraryRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Returns the title of a book, or null if the book does not exist.
+     */
+    public String findBookTitle(String bookId) {
+        return findBookTitles(List.of(bookId)).get(bookId);
+    }
+
+    /**
+     * Returns the name of a library, or null if the library does not exist.
+     */
+    public String findLibraryName(String libraryId) {
+        return findLibraryNames(List.of(libraryId)).get(libraryId);
+    }
+
+    /**
+     * Resolves the titles of several books. Books that do not exist are absent from the result.
+     */
+    public Map<String, String> findBookTitles(Collection<String> bookIds) {
+        return lookup(BOOK_TITLES_CACHE, bookIds, missing -> bookRepository.findTitlesByIdIn(missing).stream()
+                .filter(view -> view.getTitle() != null)
+                .collect(Collectors.toMap(view -> view.getId().toHexString(), BookTitleView::getTitle)));
+    }
+
+    /**
+     * Resolves the names of several libraries. Libraries that do not exist are absent from the result.
+     */
+    public Map<String, String> findLibraryNames(Collection<String> libraryIds) {
+        return lookup(LIBRARY_NAMES_CACHE, libraryIds, missing -> libraryRepository.findNamesByIdIn(missing).stream()
+                .filter(view -> view.getName() != null)
+                .collect(Collectors.toMap(view -> view.getId().toHexString(), LibraryNameView::getName)));
+    }
+
+    /**
+     * Removes a book title from the cache, to be called whenever a book is written.
+     */
+    public void evictBookTitle(String bookId) {
+        cache(BOOK_TITLES_CACHE).evict(bookId);
+    }
+
+    /**
+     * Removes a library name from the cache, to be called whenever a library is written.
+     */
+    public void evictLibraryName(String libraryId) {
+        cache(LIBRARY_NAMES_CACHE).evict(libraryId);
+    }
+
+    private Map<String, String> lookup(String cacheName, Collection<String> ids,
+                                       Function<Set<ObjectId>, Map<String, String>> loader) {
+        Cache cache = cache(cacheName);
+
+        Map<String, String> values = new HashMap<>();
+        Set<ObjectId> missing = new HashSet<>();
+        for (String id : ids) {
+            String value = cache.get(id, String.class);
+            if (value != null) {
+                values.put(id, value);
+            } else {
+                missing.add(new ObjectId(id));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            logger.debug("Loading {} entries of cache {} from MongoDB", missing.size(), cacheName);
+            loader.apply(missing).forEach((id, value) -> {
+                cache.put(id, value);
+                values.put(id, value);
+            });
+        }
+
+        return values;
+    }
+
+    private Cache cache(String cacheName) {
+        return Objects.requireNonNull(cacheManager.getCache(cacheName), "Cache not configured: " + cacheName);
+    }
+}
@@ -50,6 +50,15 @@ public class CatalogueManagementService {
     @Autowired
     private OutboxService outboxService;
 
+    @Autowired
+    private CatalogueLookupService catalogueLookupService;
+
+    @Autowired
+    private CatalogueCountService catalogueCountService;
+
+    @Autowired
+    private SuggestionService suggestionService;
+
     @Autowired
     private BookMapper bookMapper;
 
@@ -79,6 +88,15 @@ public class CatalogueManagementService {
         book = bookRepository.save(book);
         logger.info("Saved new book with ID: {}", book.getId());
 
+        // Make sure reservations never see a stale title for this book
+        catalogueLookupService.evictBookTitle(book.getId().toHexString());
+
+        // The catalogue pages must count the new book
+        catalogueCountService.evictBook(book.getCategories());
+
+        // Suggest the new book as soon as it is in the catalogue
+        suggestionService.addBook(book);
+
         // Schedule author updates via outbox
         scheduleAuthorUpdates(book);
 
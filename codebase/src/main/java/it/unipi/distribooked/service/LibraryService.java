@@ -26,6 +26,9 @@ public class LibraryService {
     @Autowired
     private LibraryMapper libraryMapper;
 
+    @Autowired
+    private CatalogueLookupService catalogueLookupService;
+
     /**
      * Retrieves library details by ID.
      *
@@ -62,7 +65,10 @@ public class LibraryService {
         }
 
         // Save the library if no duplicates found
-        libraryRepository.save(library);
+        library = libraryRepository.save(library);
+
+        // Make sure reservations never see a stale name for this library
+        catalogueLookupService.evictLibraryName(library.getId().toHexString());
     }
 
 }
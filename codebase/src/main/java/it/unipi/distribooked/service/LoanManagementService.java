@@ -1,5 +1,6 @@
 package it.unipi.distribooked.service;
 
+import it.unipi.distribooked.dto.CursorPageDTO;
 import it.unipi.distribooked.dto.LoanDTO;
 import it.unipi.distribooked.dto.OverdueLoanDTO;
 import it.unipi.distribooked.dto.ReservationDTO;
@@ -8,6 +9,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @Service
 public class LoanManagementService {
@@ -36,7 +38,53 @@ public class LoanManagementService {
     }
 
     /**
-     * Retrieves all overdue loans for a specific library.
+     * Get a page of the loans of a specific library.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The cursor returned by the previous page, or null for the first page.
+     * @param size      The approximate number of loans per page.
+     * @return The page of loans along with the cursor of the next page.
+     */
+    public CursorPageDTO<LoanDTO> getLoansPage(String libraryId, String cursor, int size) {
+        return loanRepository.getLoansPage(libraryId, cursor, size);
+    }
+
+    /**
+     * Get a page of the reservations of a specific library.
+     *
+     * @param libraryId The ID of the library.
+     * @param cursor    The cursor returned by the previous page, or null for the first page.
+     * @param size      The approximate number of reservations per page.
+     * @return The page of reservations along with the cursor of the next page.
+     */
+    public CursorPageDTO<ReservationDTO> getReservationsPage(String libraryId, String cursor, int size) {
+        return loanRepository.getReservationsPage(libraryId, cursor, size);
+    }
+
+    /**
+     * Streams all the loans of a specific library to the given consumer as they are scanned.
+     *
+     * @param libraryId The ID of the library.
+     * @param batchSize The number of loans scanned per round trip.
+     * @param consumer  The consumer receiving each loan.
+     */
+    public void streamLoans(String libraryId, int batchSize, Consumer<LoanDTO> consumer) {
+        loanRepository.streamLoans(libraryId, batchSize, consumer);
+    }
+
+    /**
+     * Streams all the reservations of a specific library to the given consumer as they are scanned.
+     *
+     * @param libraryId The ID of the library.
+     * @param batchSize The number of reservations scanned per round trip.
+     * @param consumer  The consumer receiving each reservation.
+     */
+    public void streamReservations(String libraryId, int batchSize, Consumer<ReservationDTO> consumer) {
+        loanRepository.streamReservations(libraryId, batchSize, consumer);
+    }
+
+    /**
+     * Retrieves all overdue loans for a specific library, most overdue first.
      *
      * @param libraryId The ID of the library.
      * @return A list of overdue loans (book IDs and user IDs).
@@ -45,6 +93,28 @@ public class LoanManagementService {
         return loanRepository.getOverdueLoans(libraryId);
     }
 
+    /**
+     * Retrieves the most overdue loans for a specific library.
+     *
+     * @param libraryId The ID of the library.
+     * @param limit     The maximum number of loans to return.
+     * @return The overdue loans ordered from the most overdue.
+     */
+    public List<OverdueLoanDTO> getMostOverdueLoans(String libraryId, int limit) {
+        return loanRepository.getOverdueLoans(libraryId, limit);
+    }
+
+    /**
+     * Retrieves the loans of a specific library that are due within the given number of days.
+     *
+     * @param libraryId The ID of the library.
+     * @param days      The number of days from now.
+     * @return The loans due soon, ordered by due date.
+     */
+    public List<LoanDTO> getLoansDueWithin(String libraryId, int days) {
+        return loanRepository.getLoansDueWithin(libraryId, days);
+    }
+
     /**
      * Converts a reservation into a loan for a specific user and book in a library.
      *
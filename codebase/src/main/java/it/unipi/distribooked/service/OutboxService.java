@@ -8,40 +8,57 @@ import it.unipi.distribooked.model.OutboxTask;
 import it.unipi.distribooked.model.enums.OutboxTaskType;
 import it.unipi.distribooked.model.enums.TaskStatus;
 import it.unipi.distribooked.repository.mongo.OutboxRepository;
+import it.unipi.distribooked.service.outbox.OutboxBatchTaskProcessor;
 import it.unipi.distribooked.service.outbox.OutboxTaskProcessor;
+import it.unipi.distribooked.utils.InstanceName;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.OptimisticLockingFailureException; // Import for optimistic locking exceptions
-import org.springframework.retry.annotation.Backoff; // Import for retry annotations
-import org.springframework.retry.annotation.Retryable;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.mongodb.MongoTransactionManager;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 /**
  * Handles execution of Outbox tasks.
- * Provides task creation, processing with retry mechanisms, error handling, and cleanup functionality.
+ * Provides task creation, processing with retry mechanisms and error handling.
+ * Completed tasks are cleaned up by a TTL index on the outbox collection.
  */
 @Service
 @Slf4j
 public class OutboxService {
 
+    private static final int BATCH_ATTEMPTS = 3; // Runs of a batch rejected by a concurrent one before it is retried later
+
     @Autowired
     private OutboxRepository outboxRepository; // Repository for interacting with MongoDB
 
     @Autowired
     private Map<String, OutboxTaskProcessor> processors; // Map of task processors by task type
 
+    @Autowired
+    private List<OutboxBatchTaskProcessor> batchProcessors; // Processors handling their task types in batches
+
+    @Autowired
+    private MongoTransactionManager transactionManager; // Used to run batches in transactions
+
     @Autowired
     private ObjectMapper objectMapper; // ObjectMapper for serializing and deserializing payloads
 
@@ -54,6 +71,15 @@ public class OutboxService {
     @Value("${outbox.max-retry-delay:3600}") // 1 hour
     private int maxRetryDelay; // Maximum delay for retries (in seconds)
 
+    @Value("${outbox.lease-batch-size:50}")
+    private int leaseBatchSize; // Maximum number of tasks claimed at once
+
+    @Value("${outbox.batch-size:500}")
+    private int batchSize; // Maximum number of tasks handed to a batch processor at once
+
+    @Value("${outbox.lease-duration:300}") // 5 minutes
+    private int leaseDuration; // Time after which a claimed task that was not processed can be claimed again (in seconds)
+
     private Logger logger = LoggerFactory.getLogger(OutboxService.class);
 
     // TODO
@@ -71,47 +97,183 @@ public class OutboxService {
         Assert.notNull(type, "Task type cannot be null");
         Assert.notNull(payload, "Task payload cannot be null");
 
+        // Create and save the task
+        OutboxTask task = new OutboxTask(type, toPayloadMap(payload));
+        outboxRepository.save(task);
+    }
+
+    /**
+     * Creates several tasks of the same type with a single insert.
+     * Each payload is keyed by the identifier of the record it originates from (e.g. a stream record),
+     * which makes the creation idempotent: no task is created for a record that already produced one.
+     *
+     * @param type               Type of the tasks.
+     * @param payloadsBySourceId Payloads of the tasks, keyed by the identifier of their source record.
+     * @param <T>                Generic type for payload.
+     * @return The number of tasks actually created.
+     */
+    public <T> int createTasks(OutboxTaskType type, Map<String, T> payloadsBySourceId) {
+        Assert.notNull(type, "Task type cannot be null");
+        Assert.notNull(payloadsBySourceId, "Task payloads cannot be null");
+
+        List<OutboxTask> tasks = new ArrayList<>(payloadsBySourceId.size());
+        payloadsBySourceId.forEach((sourceId, payload) -> {
+            Assert.notNull(payload, "Task payload cannot be null");
+            OutboxTask task = new OutboxTask(type, toPayloadMap(payload));
+            task.setSourceId(sourceId);
+            tasks.add(task);
+        });
+
+        return outboxRepository.insertAllIgnoringDuplicates(tasks);
+    }
+
+    private <T> Map<String, Object> toPayloadMap(T payload) {
         try {
             // Convert payload to a map for serialization
-            Map<String, Object> payloadMap = objectMapper.convertValue(
+            return objectMapper.convertValue(
                     payload,
                     new TypeReference<Map<String, Object>>() {}
             );
-            // Create and save the task
-            OutboxTask task = new OutboxTask(type, payloadMap);
-            outboxRepository.save(task);
         } catch (IllegalArgumentException e) {
             throw new InvalidPayloadException("Failed to serialize payload", e);
         }
     }
 
+    private Set<OutboxTaskType> singleTaskTypes; // Task types processed one at a time
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        singleTaskTypes = EnumSet.allOf(OutboxTaskType.class);
+        batchProcessors.forEach(processor -> singleTaskTypes.removeAll(processor.getTaskTypes()));
+
+        // Batches run in MongoDB transactions, single tasks do not
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
     /**
-     * Processes a task with retry logic for optimistic locking.
+     * Claims a batch of processable tasks for this application instance, among the types processed one at a time.
+     * The tasks are leased: no other instance processes them unless the lease expires.
      *
-     * @param task Task to process.
+     * @param limit Maximum number of tasks the caller is able to take, capped to the lease batch size.
+     * @return The claimed tasks, earliest retry time first.
      */
-    @Transactional
-    @Retryable(
-            value = OptimisticLockingFailureException.class,
-            maxAttempts = 3,
-            backoff = @Backoff(delay = 1000, multiplier = 2) // Exponential backoff
-    )
-    public void processTask(OutboxTask task) {
-        try {
-            // Retrieve the latest version of the task
-            OutboxTask freshTask = outboxRepository.findById(task.getId())
-                    .orElseThrow(() -> new IllegalStateException("Task not found"));
-
-            // Skip if the task is already completed
-            if (freshTask.getStatus() == TaskStatus.COMPLETED) {
-                log.info("Task {} already completed by another thread, skipping", task.getId());
-                return;
+    public List<OutboxTask> leaseTasks(int limit) {
+        return withoutExhaustedTasks(outboxRepository.leaseTasks(InstanceName.get(), singleTaskTypes,
+                Math.min(limit, leaseBatchSize), Duration.ofSeconds(leaseDuration)));
+    }
+
+    /**
+     * Marks as failed the leased tasks that have no retries left, and returns the others.
+     * Every expired lease counts as a retry: a task whose previous owners all crashed or hung while processing
+     * it is not processed again. Tasks failing with an error are marked as failed by handleTaskError instead.
+     */
+    private List<OutboxTask> withoutExhaustedTasks(List<OutboxTask> tasks) {
+        List<OutboxTask> processable = new ArrayList<>(tasks.size());
+        for (OutboxTask task : tasks) {
+            if (task.getRetryCount() < maxRetries) {
+                processable.add(task);
+                continue;
             }
 
-            // Mark task as in progress
-            task.setStatus(TaskStatus.IN_PROGRESS);
-            outboxRepository.save(task);
+            task.setStatus(TaskStatus.FAILED);
+            task.setErrorMessage("Lease expired " + task.getRetryCount() + " times while processing the task");
+            releaseLease(task);
+            try {
+                outboxRepository.save(task);
+                log.error("Task {} failed after {} expired leases", task.getId(), task.getRetryCount());
+            } catch (OptimisticLockingFailureException e) {
+                log.warn("Lease on task {} lost, leaving it to its new owner", task.getId());
+            }
+        }
+        return processable;
+    }
 
+    /**
+     * Claims and processes the tasks handled by batch processors, until none is left.
+     * Each batch is processed in a transaction together with the completion of its successful tasks,
+     * and failed tasks go through the usual retry handling.
+     */
+    public void processBatches() {
+        for (OutboxBatchTaskProcessor processor : batchProcessors) {
+            List<OutboxTask> leased;
+            do {
+                leased = outboxRepository.leaseTasks(InstanceName.get(), processor.getTaskTypes(), batchSize,
+                        Duration.ofSeconds(leaseDuration));
+                List<OutboxTask> tasks = withoutExhaustedTasks(leased);
+                if (!tasks.isEmpty()) {
+                    processBatch(processor, tasks);
+                }
+            } while (leased.size() == batchSize);
+        }
+    }
+
+    private void processBatch(OutboxBatchTaskProcessor processor, List<OutboxTask> tasks) {
+        Map<ObjectId, Exception> failures;
+        try {
+            failures = executeBatch(processor, tasks);
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Batch of {} tasks rolled back: {}", tasks.size(), e.getMessage());
+            failures = tasks.stream().collect(Collectors.toMap(OutboxTask::getId, task -> e));
+        } catch (Exception e) {
+            log.error("Error processing batch of {} tasks: {}", tasks.size(), e.getMessage(), e);
+            failures = tasks.stream().collect(Collectors.toMap(OutboxTask::getId, task -> e));
+        }
+
+        Map<ObjectId, Exception> taskFailures = failures;
+        tasks.stream()
+                .filter(task -> taskFailures.containsKey(task.getId()))
+                .forEach(task -> {
+                    try {
+                        handleTaskError(task, taskFailures.get(task.getId()));
+                    } catch (OptimisticLockingFailureException e) {
+                        log.warn("Lease on task {} lost, leaving it to its new owner", task.getId());
+                    }
+                });
+    }
+
+    /**
+     * Runs a batch in a transaction. A batch rejected by a unique index, because a concurrent batch created
+     * the same document first (e.g. the open reading bucket of a user), is run again right away, since
+     * it would now update that document instead.
+     */
+    private Map<ObjectId, Exception> executeBatch(OutboxBatchTaskProcessor processor, List<OutboxTask> tasks) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> {
+                    Map<ObjectId, Exception> batchFailures = processor.processBatch(tasks);
+
+                    List<ObjectId> completed = tasks.stream()
+                            .map(OutboxTask::getId)
+                            .filter(id -> !batchFailures.containsKey(id))
+                            .toList();
+                    if (outboxRepository.completeTasks(completed, InstanceName.get()) != completed.size()) {
+                        // some lease expired and was taken over: roll back, the new owners process the batch
+                        throw new OptimisticLockingFailureException("Lease lost on some tasks of the batch");
+                    }
+                    return batchFailures;
+                });
+            } catch (DuplicateKeyException e) {
+                if (attempt == BATCH_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Batch of {} tasks conflicted with a concurrent one, running it again", tasks.size());
+            }
+        }
+    }
+
+    /**
+     * Processes a task previously claimed with leaseTasks.
+     * If the lease expired and the task was claimed by another instance in the meantime, the final
+     * update fails with an OptimisticLockingFailureException and the outcome is left to the new owner.
+     * Tasks do not run in a transaction: some of them update Redis, whose template would queue their
+     * commands in a MULTI, and a failed write aborts a transaction before the failure can be recorded.
+     *
+     * @param task Task to process.
+     */
+    public void processTask(OutboxTask task) {
+        try {
             // Retrieve the appropriate processor for the task type
             String processorKey = task.getType().name();
             log.info("Looking for processor with key: {}", processorKey);
@@ -129,14 +291,23 @@ public class OutboxService {
 
             // Mark task as completed
             task.setStatus(TaskStatus.COMPLETED);
+            releaseLease(task);
             outboxRepository.save(task);
 
+        } catch (OptimisticLockingFailureException e) {
+            throw e; // the lease was lost, the task belongs to another instance now
         } catch (Exception e) {
             // Handle any errors that occur during processing
             handleTaskError(task, e);
         }
     }
 
+    private void releaseLease(OutboxTask task) {
+        task.setLeaseOwner(null);
+        task.setLeaseExpiresAt(null);
+        task.setUpdatedAt(LocalDateTime.now());
+    }
+
     /**
      * Handles errors during task processing, including retries and status updates.
      *
@@ -147,7 +318,7 @@ public class OutboxService {
         task.setErrorMessage(e.getMessage()); // Log the error message
         task.setStackTrace(ExceptionUtils.getStackTrace(e)); // Log the stack trace
         task.setRetryCount(task.getRetryCount() + 1); // Increment retry count
-        task.setUpdatedAt(LocalDateTime.now()); // Update timestamp
+        releaseLease(task); // Update timestamp and give the task back
 
         if (e instanceof BusinessException) {
             // Mark as failed if it's a business error
@@ -183,18 +354,4 @@ public class OutboxService {
         delay += ThreadLocalRandom.current().nextLong(jitter); // add the jitter
         return Duration.ofSeconds(delay);
     }
-
-
-    /**
-     * Periodically cleans up old completed tasks.
-     * Deletes tasks older than 7 days.
-     */
-    @Scheduled(cron = "${outbox.cleanup.cron:0 0 * * * *}") // Default: run every hour
-    public void cleanupOldTasks() {
-        log.info("Starting cleanup of old outbox tasks");
-        LocalDateTime threshold = LocalDateTime.now().minus(Duration.ofDays(7)); // 7-day threshold
-        int deleted = outboxRepository.deleteByStatusAndCreatedAtBefore(
-                TaskStatus.COMPLETED, threshold);
-        log.info("Deleted {} completed tasks older than {}", deleted, threshold);
-    }
 }
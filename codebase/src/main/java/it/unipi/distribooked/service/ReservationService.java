@@ -1,8 +1,7 @@
 package it.unipi.distribooked.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import it.unipi.distribooked.dto.BatchReservationRequestDTO;
+import it.unipi.distribooked.dto.BatchReservationResultDTO;
 import it.unipi.distribooked.dto.EmbeddedBookSavedDTO;
 import it.unipi.distribooked.dto.ReservationDTO;
 import it.unipi.distribooked.exceptions.ResourceNotFoundException;
@@ -11,7 +10,6 @@ import it.unipi.distribooked.model.Reservation;
 import it.unipi.distribooked.model.embedded.EmbeddedAuthor;
 import it.unipi.distribooked.model.embedded.EmbeddedBookSaved;
 import it.unipi.distribooked.repository.mongo.BookRepository;
-import it.unipi.distribooked.repository.mongo.LibraryRepository;
 import it.unipi.distribooked.repository.mongo.UserRepository;
 import it.unipi.distribooked.repository.mongo.views.BookCatalogueView;
 import it.unipi.distribooked.repository.redis.ReservationRepository;
@@ -21,7 +19,12 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
 
 /**
  * Service class responsible for handling reservations and saved books.
@@ -45,7 +48,7 @@ public class ReservationService {
     private BookRepository bookRepository;
 
     @Autowired
-    private LibraryRepository libraryRepository;
+    private CatalogueLookupService catalogueLookupService;
 
     /**
      * Reserves a book for a user.
@@ -57,11 +60,8 @@ public class ReservationService {
      */
     public ReservationDTO reserveBook(String userId, String bookId, String libraryId) {
 
-        String rawBookTitle = bookRepository.findTitleById(bookId);
-        String rawLibraryName = libraryRepository.findNameById(libraryId);
-
-        String bookTitle = extractJsonValue(rawBookTitle, "title");
-        String libraryName = extractJsonValue(rawLibraryName, "name");
+        String bookTitle = catalogueLookupService.findBookTitle(bookId);
+        String libraryName = catalogueLookupService.findLibraryName(libraryId);
 
 //        logger.info("Found book: {}", bookTitle);
 //        logger.info("Found library: {}", libraryName);
@@ -83,20 +83,53 @@ public class ReservationService {
         return reservationMapper.toReservationDTO(reservation);
     }
 
-    private String extractJsonValue(String jsonString, String key) {
-        if (jsonString == null || jsonString.isEmpty()) {
-            return null;
+    /**
+     * Reserves several books for a user at once.
+     * Book titles and library names are resolved through the lookup cache, and the reservations
+     * are executed in a single Redis pipeline. Each item succeeds or fails independently.
+     *
+     * @param userId The ID of the user making the reservations.
+     * @param items  The books to reserve, each in a specific library.
+     * @return The outcome of each item, in the same order as the request.
+     */
+    public List<BatchReservationResultDTO> reserveBooks(String userId, List<BatchReservationRequestDTO.Item> items) {
+
+        Map<String, String> titles = catalogueLookupService.findBookTitles(
+                items.stream().map(BatchReservationRequestDTO.Item::getBookId).collect(Collectors.toSet()));
+
+        Map<String, String> names = catalogueLookupService.findLibraryNames(
+                items.stream().map(BatchReservationRequestDTO.Item::getLibraryId).collect(Collectors.toSet()));
+
+        // Only items referring to an existing book and library are sent to Redis
+        List<ReservationRepository.ReservationCommand> commands = new ArrayList<>();
+        for (BatchReservationRequestDTO.Item item : items) {
+            String bookTitle = titles.get(item.getBookId());
+            String libraryName = names.get(item.getLibraryId());
+            if (bookTitle != null && libraryName != null) {
+                commands.add(new ReservationRepository.ReservationCommand(
+                        item.getBookId(), item.getLibraryId(), bookTitle, libraryName));
+            }
         }
-        try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode jsonNode = objectMapper.readTree(jsonString);
-            return jsonNode.path(key).asText(null); // Ritorna il valore del campo o null se non trovato
-        } catch (JsonProcessingException e) {
-            logger.error("Error parsing JSON string: {}", jsonString, e);
-            return null;
+
+        Iterator<ReservationRepository.ReservationOutcome> outcomes =
+                redisReservationRepository.reserveBooks(userId, commands).iterator();
+
+        List<BatchReservationResultDTO> results = new ArrayList<>(items.size());
+        for (BatchReservationRequestDTO.Item item : items) {
+            if (!titles.containsKey(item.getBookId()) || !names.containsKey(item.getLibraryId())) {
+                results.add(BatchReservationResultDTO.failed(item.getBookId(), item.getLibraryId(),
+                        "Book or library not found"));
+                continue;
+            }
+
+            ReservationRepository.ReservationOutcome outcome = outcomes.next();
+            results.add(outcome.error() == null
+                    ? BatchReservationResultDTO.reserved(reservationMapper.toReservationDTO(outcome.reservation()))
+                    : BatchReservationResultDTO.failed(item.getBookId(), item.getLibraryId(), outcome.error()));
         }
-    }
 
+        return results;
+    }
 
     /**
      * Cancels a reservation for a user in a specific library.
@@ -0,0 +1,165 @@
+package it.unipi.distribooked.service;
+
+import it.unipi.distribooked.dto.SuggestionDTO;
+import it.unipi.distribooked.model.Book;
+import it.unipi.distribooked.model.embedded.EmbeddedAuthor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Service providing suggestions as the user types in the search box: the book titles and author names
+ * starting with the typed text, the most read first.
+ *
+ * Suggestions are served from an in-process prefix tree, without querying MongoDB. The tree is built
+ * from the books when the application starts and rebuilt every suggest.rebuild-interval-ms, which is
+ * when the rank of the suggestions catches up with new readings. Books added to the catalogue are
+ * suggested right away. Builds run on a thread of their own, so that streaming the whole collection
+ * does not hold up the scheduled workers.
+ *
+ * Authors are the ones found in the books, ranked by the total readings of their books.
+ */
+@Service
+public class SuggestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SuggestionService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${suggest.max-results:10}")
+    private int maxResults;
+
+    @Value("${suggest.rebuild-interval-ms:3600000}")
+    private long rebuildIntervalMs;
+
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "suggestion-rebuild"));
+
+    private volatile SuggestionTrie trie;
+
+    private List<SuggestionTrie.Entry> addedDuringRebuild; // not null while rebuilding, guarded by this
+
+    private final Object rebuildLock = new Object(); // one rebuild at a time
+
+    @PostConstruct
+    public void init() {
+        trie = new SuggestionTrie(maxResults); // empty until the first build
+        rebuilder.scheduleWithFixedDelay(this::rebuild, 0, rebuildIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    /**
+     * Returns the books and authors whose title or full name starts with the given prefix, ignoring
+     * case and diacritics.
+     *
+     * @param prefix The text typed so far.
+     * @param limit  The maximum number of suggestions, at most suggest.max-results.
+     * @return The suggestions, the most read first.
+     * @throws IllegalArgumentException If the limit is above suggest.max-results, the number of suggestions
+     *         kept for each prefix.
+     */
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        if (limit > maxResults) {
+            throw new IllegalArgumentException("The limit cannot exceed " + maxResults + " suggestions.");
+        }
+        return trie.lookup(prefix, limit).stream()
+                .map(entry -> new SuggestionDTO(entry.type(), entry.id(), entry.text()))
+                .toList();
+    }
+
+    /**
+     * Makes a book just added to the catalogue, and its authors, available as suggestions.
+     */
+    public synchronized void addBook(Book book) {
+        List<SuggestionTrie.Entry> entries = new ArrayList<>();
+        entries.add(bookEntry(book));
+        if (book.getAuthors() != null) {
+            // an author already suggested keeps the higher score it has
+            book.getAuthors().forEach(author -> entries.add(authorEntry(author, book.getReadingsCount())));
+        }
+
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.addAll(entries);
+        }
+        entries.forEach(trie::insert);
+    }
+
+    /**
+     * Builds a new prefix tree from the books, streaming them, and swaps it with the current one.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                addedDuringRebuild = new ArrayList<>();
+            }
+
+            try {
+                SuggestionTrie rebuilt = new SuggestionTrie(maxResults);
+                Map<ObjectId, SuggestionTrie.Entry> authors = new HashMap<>();
+
+                Query query = new Query();
+                query.fields().include("title", "authors", "readingsCount");
+                try (Stream<Book> books = mongoTemplate.stream(query, Book.class)) {
+                    books.forEach(book -> {
+                        rebuilt.insert(bookEntry(book));
+                        if (book.getAuthors() != null) {
+                            book.getAuthors().forEach(author -> authors.merge(author.getId(),
+                                    authorEntry(author, book.getReadingsCount()),
+                                    (total, more) -> authorEntry(total, more.score())));
+                        }
+                    });
+                }
+                authors.values().forEach(rebuilt::insert);
+
+                synchronized (this) {
+                    addedDuringRebuild.forEach(rebuilt::insert);
+                    trie = rebuilt;
+                }
+                logger.info("Built the suggestions of {} authors and their books in {} ms",
+                        authors.size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                logger.error("Error building the suggestions, keeping the previous ones: {}", e.getMessage(), e);
+            } finally {
+                synchronized (this) {
+                    addedDuringRebuild = null;
+                }
+            }
+        }
+    }
+
+    private static SuggestionTrie.Entry bookEntry(Book book) {
+        return new SuggestionTrie.Entry(SuggestionDTO.Type.BOOK, book.getId().toHexString(),
+                book.getTitle() != null ? book.getTitle() : "", book.getReadingsCount());
+    }
+
+    private static SuggestionTrie.Entry authorEntry(EmbeddedAuthor author, long readings) {
+        return new SuggestionTrie.Entry(SuggestionDTO.Type.AUTHOR, author.getId().toHexString(),
+                author.getFullName() != null ? author.getFullName() : "", readings);
+    }
+
+    private static SuggestionTrie.Entry authorEntry(SuggestionTrie.Entry author, long moreReadings) {
+        return new SuggestionTrie.Entry(author.type(), author.id(), author.text(), author.score() + moreReadings);
+    }
+}
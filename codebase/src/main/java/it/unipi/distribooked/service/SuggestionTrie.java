@@ -0,0 +1,155 @@
+package it.unipi.distribooked.service;
+
+import it.unipi.distribooked.dto.SuggestionDTO;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Prefix tree of the suggestion texts, normalized to lower case and without diacritics.
+ *
+ * Every node keeps the best suggestions among the texts starting with its prefix, so a lookup only walks
+ * the characters of the prefix, whatever the number of suggestions. Children are kept in sorted arrays
+ * instead of maps to keep the footprint of the many nodes low.
+ */
+final class SuggestionTrie {
+
+    /**
+     * A suggestion and its rank, higher scores first.
+     */
+    record Entry(SuggestionDTO.Type type, String id, String text, long score) {
+
+        boolean sameSuggestion(Entry other) {
+            return type == other.type && id.equals(other.id);
+        }
+    }
+
+    private static final Comparator<Entry> BEST_FIRST = Comparator.comparingLong(Entry::score).reversed()
+            .thenComparing(Entry::text);
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final int maxSuggestions; // suggestions kept by each node
+    private final Node root = new Node();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    SuggestionTrie(int maxSuggestions) {
+        this.maxSuggestions = maxSuggestions;
+    }
+
+    /**
+     * Adds a suggestion, or raises the score of a suggestion already present.
+     */
+    void insert(Entry entry) {
+        String key = normalize(entry.text());
+        if (key.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            node.offer(entry, maxSuggestions);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.childOrCreate(key.charAt(i));
+                node.offer(entry, maxSuggestions);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The best suggestions starting with the given prefix, at most limit.
+     */
+    List<Entry> lookup(String prefix, int limit) {
+        String key = normalize(prefix);
+
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+            return List.of(node.best).subList(0, Math.min(limit, node.best.length));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static String normalize(String text) {
+        String withoutDiacritics = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return WHITESPACE.matcher(withoutDiacritics.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static final class Node {
+
+        private char[] labels = NO_LABELS; // sorted
+        private Node[] children = NO_CHILDREN; // children[i] is reached through labels[i]
+        private Entry[] best = NO_ENTRIES; // sorted best first
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+            Node child = new Node();
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = child;
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+
+        void offer(Entry entry, int maxSuggestions) {
+            List<Entry> merged = new ArrayList<>(best.length + 1);
+            for (Entry current : best) {
+                if (!current.sameSuggestion(entry)) {
+                    merged.add(current);
+                } else if (current.score() >= entry.score()) {
+                    return; // already ranked at least as high
+                }
+            }
+
+            if (merged.size() >= maxSuggestions && BEST_FIRST.compare(entry, merged.get(merged.size() - 1)) > 0) {
+                return; // not among the best ones
+            }
+
+            merged.add(entry);
+            merged.sort(BEST_FIRST);
+            if (merged.size() > maxSuggestions) {
+                merged.remove(merged.size() - 1);
+            }
+            best = merged.toArray(NO_ENTRIES);
+        }
+    }
+}
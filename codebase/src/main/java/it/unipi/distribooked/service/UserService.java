@@ -117,7 +117,7 @@ public class UserService implements UserDetailsService {
     }
 
     /**
-     * Retrieves the list of read books for a user.
+     * Retrieves the most recent read books for a user.
      *
      * @param userId The ID of the user.
      * @return A list of read books.
@@ -139,6 +139,24 @@ public class UserService implements UserDetailsService {
                 .toList();
     }
 
+    /**
+     * Retrieves a page of the full reading history of a user, from the most recent reading.
+     *
+     * @param userId The ID of the user.
+     * @param cursor The cursor returned by the previous page, or null for the first page.
+     * @param size   The number of readings per page.
+     * @return A page of read books and the cursor of the next page.
+     */
+    public CursorPageDTO<EmbeddedBookReadDTO> getReadingsHistory(String userId, String cursor, int size) {
+        CursorPageDTO<EmbeddedBookRead> page = userRepository.findReadingsHistory(new ObjectId(userId), cursor, size);
+
+        return new CursorPageDTO<>(
+                page.getContent().stream()
+                        .map(userMapper::toEmbeddedBookReadDTO)
+                        .toList(),
+                page.getNextCursor());
+    }
+
     /**
      * Get user details by ID.
      *
@@ -0,0 +1,157 @@
+package it.unipi.distribooked.service.outbox;
+
+import it.unipi.distribooked.exceptions.TaskExecutionException;
+import it.unipi.distribooked.model.Author;
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import it.unipi.distribooked.model.embedded.EmbeddedBookRead;
+import it.unipi.distribooked.repository.mongo.BookRepository;
+import it.unipi.distribooked.repository.mongo.UserRepository;
+import it.unipi.distribooked.repository.mongo.custom.CustomUserRepository.ReadBook;
+import it.unipi.distribooked.repository.mongo.views.BookCatalogueView;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Batch processor for ADD_READ_BOOK tasks, created when a loan is completed.
+ *
+ * For a whole batch of completed loans, the books are read with a single $in query, the readings are added
+ * to the users with a single bulkWrite, and the readings counts of the books are incremented with another
+ * one (one increment per book, however many times it was read in the batch).
+ */
+@Component
+public class AddReadBookBatchProcessor implements OutboxBatchTaskProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AddReadBookBatchProcessor.class);
+
+    private record ReadBookTask(OutboxTask task, ObjectId userId, ObjectId bookId, ObjectId libraryId, long timestamp) {}
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Override
+    public Set<OutboxTaskType> getTaskTypes() {
+        return Set.of(OutboxTaskType.ADD_READ_BOOK);
+    }
+
+    @Override
+    public Map<ObjectId, Exception> processBatch(List<OutboxTask> tasks) {
+        logger.debug("Processing {} ADD_READ_BOOK tasks", tasks.size());
+
+        Map<ObjectId, Exception> failures = new HashMap<>();
+
+        // Extract data from payloads
+        List<ReadBookTask> readBookTasks = new ArrayList<>();
+        for (OutboxTask task : tasks) {
+            try {
+                readBookTasks.add(parse(task));
+            } catch (TaskExecutionException e) {
+                failures.put(task.getId(), e);
+            }
+        }
+
+        // Get the details of all the books at once
+        Map<ObjectId, BookCatalogueView> books = bookRepository.findBooksByIdIn(
+                        readBookTasks.stream().map(ReadBookTask::bookId).collect(Collectors.toSet()))
+                .stream()
+                .collect(Collectors.toMap(BookCatalogueView::getId, Function.identity()));
+
+        Map<ObjectId, ReadBookTask> tasksToApply = new LinkedHashMap<>();
+        List<ReadBook> readBooks = new ArrayList<>();
+        for (ReadBookTask readBookTask : readBookTasks) {
+            BookCatalogueView book = books.get(readBookTask.bookId());
+            if (book == null) {
+                failures.put(readBookTask.task().getId(),
+                        new TaskExecutionException("Book not found: " + readBookTask.bookId()));
+                continue;
+            }
+            tasksToApply.put(readBookTask.task().getId(), readBookTask);
+            readBooks.add(new ReadBook(readBookTask.userId(), toBookRead(readBookTask, book)));
+        }
+
+        // Add the readings to the users
+        Set<ObjectId> missingUsers = userRepository.addReadBooks(readBooks);
+
+        // Increment the readings count of the books read by existing users
+        Map<ObjectId, Integer> incrementsByBook = new HashMap<>();
+        for (ReadBookTask readBookTask : tasksToApply.values()) {
+            if (missingUsers.contains(readBookTask.userId())) {
+                failures.put(readBookTask.task().getId(),
+                        new TaskExecutionException("Failed to update user: " + readBookTask.userId()));
+            } else {
+                incrementsByBook.merge(readBookTask.bookId(), 1, Integer::sum);
+            }
+        }
+        bookRepository.incrementReadingsCounts(incrementsByBook);
+
+        logger.info("Added {} read books to users and incremented readings count of {} books",
+                tasks.size() - failures.size(), incrementsByBook.size());
+
+        return failures;
+    }
+
+    private ReadBookTask parse(OutboxTask task) throws TaskExecutionException {
+        String timestampStr = (String) task.getPayload().get("timestamp");
+
+        // Parse timestamp from string
+        long timestamp;
+        try {
+            timestamp = Long.parseLong(timestampStr);
+        } catch (NumberFormatException e) {
+            throw new TaskExecutionException("Invalid timestamp format: " + timestampStr, e);
+        }
+
+        // Convert IDs to ObjectId
+        try {
+            return new ReadBookTask(task,
+                    new ObjectId((String) task.getPayload().get("userId")),
+                    new ObjectId((String) task.getPayload().get("bookId")),
+                    new ObjectId((String) task.getPayload().get("libraryId")),
+                    timestamp);
+        } catch (RuntimeException e) {
+            throw new TaskExecutionException("Invalid ADD_READ_BOOK payload: " + task.getPayload(), e);
+        }
+    }
+
+    private EmbeddedBookRead toBookRead(ReadBookTask readBookTask, BookCatalogueView book) {
+        EmbeddedBookRead bookRead = new EmbeddedBookRead();
+        bookRead.setId(readBookTask.bookId());
+        bookRead.setTitle(book.getTitle());
+
+        // Convert EmbeddedAuthor list to Author list
+        List<Author> authors = book.getAuthors().stream()
+                .map(embeddedAuthor -> {
+                    Author author = new Author();
+                    author.setId(embeddedAuthor.getId());
+                    author.setFullName(embeddedAuthor.getFullName());
+                    return author;
+                })
+                .collect(Collectors.toList());
+        bookRead.setAuthors(authors);
+
+        bookRead.setLibraryId(readBookTask.libraryId());
+        bookRead.setReturnDate(LocalDateTime.ofInstant(
+                Instant.ofEpochSecond(readBookTask.timestamp()),
+                ZoneOffset.UTC
+        ));
+        return bookRead;
+    }
+}
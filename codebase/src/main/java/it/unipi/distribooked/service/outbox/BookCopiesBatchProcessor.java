@@ -0,0 +1,101 @@
+package it.unipi.distribooked.service.outbox;
+
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import it.unipi.distribooked.repository.mongo.BookRepository;
+import it.unipi.distribooked.repository.mongo.custom.CustomBookRepository.CopyDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch processor for INCREMENT_BOOK_COPIES and DECREMENT_BOOK_COPIES tasks.
+ *
+ * The pending increments and decrements of the same (book, library) are coalesced into their net change,
+ * and all the net changes are applied with a single bulkWrite, instead of one $inc per task.
+ * The tasks are folded in their leased order, so each one succeeds or fails as it would if run on its own.
+ */
+@Slf4j
+@Component
+public class BookCopiesBatchProcessor implements OutboxBatchTaskProcessor {
+
+    private record BranchKey(ObjectId bookId, ObjectId libraryId) {}
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Override
+    public Set<OutboxTaskType> getTaskTypes() {
+        return Set.of(OutboxTaskType.INCREMENT_BOOK_COPIES, OutboxTaskType.DECREMENT_BOOK_COPIES);
+    }
+
+    @Override
+    public Map<ObjectId, Exception> processBatch(List<OutboxTask> tasks) {
+        Map<ObjectId, Exception> failures = new HashMap<>();
+
+        // Group the tasks by (book, library), keeping their order
+        Map<BranchKey, List<OutboxTask>> tasksByBranch = new LinkedHashMap<>();
+        for (OutboxTask task : tasks) {
+            try {
+                BranchKey key = new BranchKey(
+                        new ObjectId((String) task.getPayload().get("bookId")),
+                        new ObjectId((String) task.getPayload().get("libraryId")));
+
+                tasksByBranch.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
+            } catch (RuntimeException e) {
+                failures.put(task.getId(), new IllegalArgumentException("Invalid copies task payload", e));
+            }
+        }
+
+        Map<ObjectId, Map<ObjectId, Integer>> copies = bookRepository.findCopiesByLibrary(
+                tasksByBranch.keySet().stream().map(BranchKey::bookId).distinct().toList());
+
+        List<CopyDelta> deltas = new ArrayList<>();
+        tasksByBranch.forEach((key, branchTasks) -> {
+            Integer current = copies.getOrDefault(key.bookId(), Map.of()).get(key.libraryId());
+
+            if (current == null) {
+                IllegalStateException error = new IllegalStateException(
+                        "Cannot update copies: library " + key.libraryId() + " is not a branch of book " + key.bookId());
+                branchTasks.forEach(task -> failures.put(task.getId(), error));
+                return;
+            }
+
+            // Only the decrements that would leave no copies fail, as the single decrement did
+            int count = current;
+            for (OutboxTask task : branchTasks) {
+                if (task.getType() == OutboxTaskType.INCREMENT_BOOK_COPIES) {
+                    count++;
+                } else if (count > 0) {
+                    count--;
+                } else {
+                    failures.put(task.getId(), new IllegalStateException(
+                            "Cannot decrement copies: No available copies to decrement or already processed."));
+                }
+            }
+
+            if (count != current) {
+                deltas.add(new CopyDelta(key.bookId(), key.libraryId(), count - current));
+            }
+        });
+
+        int applied = bookRepository.applyCopyDeltas(deltas);
+        if (applied != deltas.size()) {
+            // the copies changed since they were read, the whole batch is rolled back and retried
+            throw new OptimisticLockingFailureException(
+                    "Only " + applied + " of " + deltas.size() + " copy changes applied");
+        }
+
+        log.info("Applied {} copy changes coalescing {} tasks", deltas.size(), tasks.size() - failures.size());
+        return failures;
+    }
+}
@@ -0,0 +1,32 @@
+package it.unipi.distribooked.service.outbox;
+
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import org.bson.types.ObjectId;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Processor handling many outbox tasks at once, for task types that are cheaper to apply in bulk.
+ * Tasks of these types are leased in batches and never reach the single-task OutboxTaskProcessors.
+ *
+ * The batch runs in a MongoDB transaction together with the completion of its successful tasks, so that
+ * a crash in the middle leaves neither partial writes nor completed tasks whose writes are lost.
+ */
+public interface OutboxBatchTaskProcessor {
+
+    /**
+     * @return The task types handled by this processor.
+     */
+    Set<OutboxTaskType> getTaskTypes();
+
+    /**
+     * Processes a batch of tasks.
+     *
+     * @param tasks The tasks to process, all of them of the types handled by this processor.
+     * @return The tasks that failed, by ID, with the reason; every other task is considered processed.
+     */
+    Map<ObjectId, Exception> processBatch(List<OutboxTask> tasks);
+}
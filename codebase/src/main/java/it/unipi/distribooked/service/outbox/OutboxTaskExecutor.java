@@ -0,0 +1,135 @@
+package it.unipi.distribooked.service.outbox;
+
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Executes leased outbox tasks in parallel, with a separate pool for each task type so that slow task types
+ * (e.g. UPDATE_AUTHOR) do not delay cheap ones.
+ *
+ * The pool of a type is made of single-threaded lanes, configurable through
+ * outbox.executor.concurrency.<TYPE> (outbox.executor.default-concurrency otherwise). Tasks of the same type
+ * and aggregate, i.e. with the same userId or, if absent, bookId, always go to the same lane, so they never
+ * run concurrently and do not conflict on the same documents. No order is guaranteed between tasks of the
+ * same aggregate: tasks of different types run on different pools, and a failed task is retried after the
+ * tasks leased after it.
+ *
+ * The number of tasks submitted and not yet completed is bounded by outbox.executor.max-in-flight:
+ * the dispatcher only leases as many tasks as the remaining capacity, so it stops leasing when the
+ * executor is saturated instead of queueing tasks whose leases would expire while waiting.
+ */
+@Slf4j
+@Component
+public class OutboxTaskExecutor {
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${outbox.executor.default-concurrency:2}")
+    private int defaultConcurrency;
+
+    @Value("${outbox.executor.max-in-flight:200}")
+    private int maxInFlight;
+
+    private final Map<OutboxTaskType, ExecutorService[]> lanes = new EnumMap<>(OutboxTaskType.class);
+    private Semaphore inFlight;
+
+    @PostConstruct
+    public void init() {
+        inFlight = new Semaphore(maxInFlight);
+
+        for (OutboxTaskType type : OutboxTaskType.values()) {
+            int concurrency = environment.getProperty(
+                    "outbox.executor.concurrency." + type.name(), Integer.class, defaultConcurrency);
+
+            ExecutorService[] typeLanes = new ExecutorService[Math.max(1, concurrency)];
+            for (int i = 0; i < typeLanes.length; i++) {
+                String threadName = "outbox-" + type.name().toLowerCase() + "-" + i;
+                typeLanes[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, threadName));
+            }
+            lanes.put(type, typeLanes);
+        }
+    }
+
+    /**
+     * @return How many more tasks can be submitted before the executor is saturated.
+     */
+    public int remainingCapacity() {
+        return inFlight.availablePermits();
+    }
+
+    /**
+     * Submits a task for execution in the lane of its aggregate.
+     * Blocks if the executor is saturated, which does not happen as long as callers respect remainingCapacity.
+     *
+     * @param task    The task to execute.
+     * @param handler The processing of the task.
+     */
+    public void execute(OutboxTask task, Consumer<OutboxTask> handler) {
+        inFlight.acquireUninterruptibly();
+
+        ExecutorService[] typeLanes = lanes.get(task.getType());
+        ExecutorService lane = typeLanes[Math.floorMod(aggregateKey(task).hashCode(), typeLanes.length)];
+        try {
+            lane.execute(() -> {
+                try {
+                    handler.accept(task);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // the lane was shut down, the task stays leased and is claimed again when the lease expires
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.values().forEach(typeLanes -> {
+            for (ExecutorService lane : typeLanes) {
+                lane.shutdown();
+            }
+        });
+
+        try {
+            for (ExecutorService[] typeLanes : lanes.values()) {
+                for (ExecutorService lane : typeLanes) {
+                    if (!lane.awaitTermination(30, TimeUnit.SECONDS)) {
+                        log.warn("Outbox tasks still running at shutdown will be claimed again when their lease expires");
+                        lane.shutdownNow();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String aggregateKey(OutboxTask task) {
+        Map<String, Object> payload = task.getPayload();
+        if (payload != null && payload.get("userId") != null) {
+            return payload.get("userId").toString();
+        }
+        if (payload != null && payload.get("bookId") != null) {
+            return payload.get("bookId").toString();
+        }
+        return task.getId().toHexString(); // no known aggregate, any lane will do
+    }
+}
@@ -15,7 +15,7 @@ import org.springframework.stereotype.Component;
 import java.util.List;
 
 /**
- * Processor for UPDATE_AUTHOR tasks that updates the books array in author documents.
+ * Processor for UPDATE_AUTHOR tasks that adds a new book to the books of its authors.
  */
 @Component("UPDATE_AUTHOR")  // Name must match OutboxTaskType enum value
 public class UpdateAuthorProcessor implements OutboxTaskProcessor {
@@ -51,7 +51,7 @@ public class UpdateAuthorProcessor implements OutboxTaskProcessor {
     }
 
     /**
-     * Updates a single author document by adding the book to their books array
+     * Updates a single author by adding the book to their books buckets
      * and incrementing the totalBooks counter.
      */
     private void updateAuthorDocument(ObjectId authorId, EmbeddedBookAuthor book) {
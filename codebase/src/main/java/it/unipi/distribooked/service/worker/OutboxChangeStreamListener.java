@@ -0,0 +1,146 @@
+package it.unipi.distribooked.service.worker;
+
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.enums.TaskStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Dispatches outbox tasks as soon as they become processable, instead of waiting for the next polling
+ * run of the OutboxWorker, by watching a MongoDB change stream on the outbox collection:
+ * - an inserted task triggers a dispatch immediately;
+ * - a task rescheduled for retry triggers a dispatch at its nextRetryAt.
+ *
+ * Polling keeps running as a safety net, e.g. for events missed while the change stream is reopened.
+ * Change streams require MongoDB to run as a replica set (a single-node one is enough), hence this
+ * mode is only enabled with outbox.change-stream.enabled=true.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "outbox.change-stream.enabled", havingValue = "true")
+public class OutboxChangeStreamListener implements SmartLifecycle {
+
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OutboxWorker outboxWorker;
+
+    // single thread, so that dispatches never overlap and a burst of events results in few dispatches
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "outbox-change-stream-dispatch"));
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+
+    private Thread watcher;
+    private volatile boolean running;
+    private BsonDocument resumeToken;
+
+    @Override
+    public void start() {
+        running = true;
+        watcher = new Thread(this::watch, "outbox-change-stream");
+        watcher.start();
+        log.info("Watching the outbox collection for processable tasks");
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        dispatcher.shutdownNow();
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void watch() {
+        List<Bson> pipeline = List.of(Aggregates.match(Filters.or(
+                Filters.eq("operationType", OperationType.INSERT.getValue()),
+                // retries are scheduled by saving the whole task, which replaces the document
+                Filters.and(
+                        Filters.eq("operationType", OperationType.REPLACE.getValue()),
+                        Filters.eq("fullDocument.status", TaskStatus.RETRY_SCHEDULED.name()))
+        )));
+
+        while (running) {
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = openCursor(pipeline)) {
+                while (running) {
+                    ChangeStreamDocument<Document> event = cursor.tryNext();
+                    if (event != null) {
+                        onEvent(event);
+                    }
+                    resumeToken = cursor.getResumeToken();
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Outbox change stream interrupted, reopening it: {}", e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> openCursor(List<Bson> pipeline) {
+        String collection = mongoTemplate.getCollectionName(OutboxTask.class);
+        ChangeStreamIterable<Document> changeStream = mongoTemplate.getCollection(collection)
+                .watch(pipeline)
+                .maxAwaitTime(1, TimeUnit.SECONDS); // lets the loop notice a stop request
+        if (resumeToken != null) {
+            changeStream = changeStream.resumeAfter(resumeToken);
+        }
+        return changeStream.cursor();
+    }
+
+    private void onEvent(ChangeStreamDocument<Document> event) {
+        Document task = event.getFullDocument();
+        Date nextRetryAt = task != null ? task.getDate("nextRetryAt") : null;
+
+        long delay = nextRetryAt != null ? nextRetryAt.getTime() - System.currentTimeMillis() : 0;
+        if (delay > 0) {
+            dispatcher.schedule(this::dispatch, delay, TimeUnit.MILLISECONDS);
+        } else if (dispatchPending.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    private void dispatch() {
+        dispatchPending.set(false); // events arriving from now on need a new dispatch
+        try {
+            outboxWorker.processOutboxTasks();
+        } catch (Exception e) {
+            log.error("Error dispatching outbox tasks: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,77 +1,62 @@
 package it.unipi.distribooked.service.worker;
 
 import it.unipi.distribooked.model.OutboxTask;
-import it.unipi.distribooked.model.enums.TaskStatus;
-import it.unipi.distribooked.repository.mongo.OutboxRepository;
 import it.unipi.distribooked.service.OutboxService;
+import it.unipi.distribooked.service.outbox.OutboxTaskExecutor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 /**
  * Periodically processes tasks in the Outbox collection.
  *
- * This worker component is responsible for fetching tasks from the outbox repository based on their status,
- * processing them using the OutboxService, and handling edge cases like stuck tasks.
+ * This worker component claims batches of processable tasks through the OutboxService and hands them to the
+ * OutboxTaskExecutor, which runs them in parallel per task type. Claims are atomic leases, so every application
+ * instance only processes the tasks it leased, and tasks left in progress by a crashed instance are claimed
+ * again once their lease expires. No more tasks are leased than the executor can take.
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class OutboxWorker {
 
-    private final OutboxService outboxService; // Service to handle task processing
-    private final OutboxRepository outboxRepository; // Repository to interact with the outbox tasks in the database
-
-    private Logger logger = LoggerFactory.getLogger(OutboxWorker.class);
+    private final OutboxService outboxService; // Service to handle task leasing and processing
+    private final OutboxTaskExecutor taskExecutor; // Per-type pools the leased tasks are executed on
 
     /**
-     * Processes outbox tasks periodically.
+     * Dispatches outbox tasks periodically.
      *
-     * This method is triggered every 5 seconds to:
-     * 1. Process tasks in the PENDING state.
-     * 2. Process tasks in the RETRY_SCHEDULED state.
-     * 3. Identify and reset "stuck" tasks (those stuck in progress for over 5 minutes).
+     * This method is triggered every second. It first processes the task types handled in batches, then keeps
+     * claiming tasks for the executor until either no processable task is left or the executor is saturated,
+     * in which case leasing resumes at the next run.
+     * It can also be triggered by the OutboxChangeStreamListener, hence runs never overlap.
      */
-    @Scheduled(fixedDelay = 5000) // Runs every 5 seconds
-    public void processOutboxTasks() {
-        LocalDateTime now = LocalDateTime.now();
-
-        // logger.info("Processing outbox tasks at {}", now);
-
-        // Fetch and process tasks in the PENDING state
-        List<OutboxTask> pendingTasks = outboxRepository.findProcessableTasks(TaskStatus.PENDING, now);
-        pendingTasks.forEach(outboxService::processTask);
-
-        // Fetch and process tasks in the RETRY_SCHEDULED state
-        List<OutboxTask> retryScheduledTasks = outboxRepository.findProcessableTasks(TaskStatus.RETRY_SCHEDULED, now);
-        retryScheduledTasks.forEach(outboxService::processTask);
-
-        // Handle tasks that are "stuck" (in progress for more than 5 minutes)
-        LocalDateTime stuckThreshold = now.minusMinutes(5);
-        List<OutboxTask> stuckTasks = outboxRepository.findStuckTasks(stuckThreshold);
-        stuckTasks.forEach(this::resetStuckTask);
-
-        // logger.info("Finished processing outbox tasks at {}", LocalDateTime.now());
+    @Scheduled(fixedDelayString = "${outbox.dispatch-interval-ms:1000}")
+    public synchronized void processOutboxTasks() {
+        outboxService.processBatches();
+
+        int capacity;
+        while ((capacity = taskExecutor.remainingCapacity()) > 0) {
+            List<OutboxTask> leasedTasks = outboxService.leaseTasks(capacity);
+            if (leasedTasks.isEmpty()) {
+                return;
+            }
+            leasedTasks.forEach(task -> taskExecutor.execute(task, this::processLeasedTask));
+        }
+        log.debug("Outbox executor saturated, leasing paused");
     }
 
-    /**
-     * Resets stuck tasks to a retriable state.
-     *
-     * This method identifies tasks that have been in progress for too long (over 5 minutes) and resets their status
-     * to RETRY_SCHEDULED, allowing them to be retried after a short delay.
-     *
-     * @param task The task identified as "stuck."
-     */
-    private void resetStuckTask(OutboxTask task) {
-        log.warn("Found stuck task {}, resetting status to RETRY_SCHEDULED", task.getId());
-        task.setStatus(TaskStatus.RETRY_SCHEDULED); // Reset the status for retry
-        task.setNextRetryAt(LocalDateTime.now().plusMinutes(1)); // Schedule retry in 1 minute
-        outboxRepository.save(task); // Persist changes to the database
+    private void processLeasedTask(OutboxTask task) {
+        try {
+            outboxService.processTask(task);
+        } catch (OptimisticLockingFailureException e) {
+            log.warn("Lease on task {} expired and the task was claimed again, dropping it", task.getId());
+        } catch (Exception e) {
+            log.error("Error processing task {}: {}", task.getId(), e.getMessage(), e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,344 @@
+package it.unipi.distribooked.service.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import it.unipi.distribooked.service.OutboxService;
+import it.unipi.distribooked.utils.InstanceName;
+import it.unipi.distribooked.utils.RedisKey;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.StreamEntryID;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XPendingParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamEntry;
+import redis.clients.jedis.resps.StreamPendingEntry;
+import redis.clients.jedis.util.Pool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base class for the workers turning the records of the Redis streams written by the Lua scripts
+ * into outbox tasks.
+ *
+ * Each worker runs a configurable number of consumers in the stream's consumer group. Every consumer has
+ * a dedicated thread blocking on XREADGROUP, so records are processed as soon as they are appended,
+ * and a name unique to this application instance, so that several instances share the stream's load
+ * instead of colliding on the same consumer identity.
+ *
+ * Records delivered to a consumer that crashed, or whose processing failed, stay in the group's pending
+ * entries list (PEL). A periodic recovery pass claims the entries idle for too long with XAUTOCLAIM and
+ * processes them again; records delivered more than the maximum number of times are moved to the
+ * stream's dead-letter stream. PEL depth, claimed and dead-lettered records are published as metrics.
+ *
+ * Every batch read from the stream becomes a single outbox insert followed by a single XACK. Tasks are keyed
+ * by the stream record they come from, so a crash between the insert and the XACK only leads to the
+ * records being read again, never to duplicate tasks.
+ *
+ * Subclasses only define the task type and, if needed, how a record is converted into the task payload.
+ */
+@Slf4j
+public abstract class StreamWorker implements SmartLifecycle {
+
+    private final String streamKey;
+    private final String consumerGroup;
+    private final String deadLetterKey;
+
+    @Autowired
+    private Pool<Jedis> jedisPool;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Value("${streams.consumers-per-stream:2}")
+    private int consumersPerStream;
+
+    @Value("${streams.batch-size:100}")
+    private int batchSize;
+
+    @Value("${streams.block-timeout-ms:1000}") // must stay below the Redis socket timeout
+    private int blockTimeoutMs;
+
+    @Value("${streams.claim-min-idle-ms:60000}")
+    private long claimMinIdleMs;
+
+    @Value("${streams.max-deliveries:5}")
+    private int maxDeliveries;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    private final AtomicLong pendingEntries = new AtomicLong();
+    private Counter claimedCounter;
+    private Counter deadLetteredCounter;
+
+    protected StreamWorker(String streamKey, String consumerGroup) {
+        this.streamKey = streamKey;
+        this.consumerGroup = consumerGroup;
+        this.deadLetterKey = RedisKey.DEAD_LETTER_STREAM.getKey(streamKey);
+    }
+
+    /**
+     * Type of the outbox tasks created from the records of the stream.
+     */
+    protected abstract OutboxTaskType taskType();
+
+    /**
+     * Converts a stream record into the payload of its outbox task. Throwing leaves the record unacknowledged.
+     */
+    protected Map<String, Object> toPayload(StreamEntry record) throws Exception {
+        return readPayload(record);
+    }
+
+    @Override
+    public void start() {
+        createGroup();
+        registerMetrics();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(consumersPerStream,
+                runnable -> new Thread(runnable, consumerGroup + "-" + threadCount.incrementAndGet()));
+
+        running = true;
+        for (int i = 1; i <= consumersPerStream; i++) {
+            String consumerName = InstanceName.get() + "-" + i;
+            executor.submit(() -> consume(consumerName));
+        }
+
+        log.info("Started {} consumers on stream {} (group {})", consumersPerStream, streamKey, consumerGroup);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            // consumers notice the flag at the latest when their blocking read times out
+            if (!executor.awaitTermination(blockTimeoutMs * 2L, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Reads the JSON payload that the Lua scripts store in the "data" field of each record.
+     */
+    @SuppressWarnings("unchecked")
+    protected Map<String, Object> readPayload(StreamEntry record) throws Exception {
+        return objectMapper.readValue(record.getFields().get("data"), Map.class);
+    }
+
+    private void consume(String consumerName) {
+        XReadGroupParams params = XReadGroupParams.xReadGroupParams()
+                .count(batchSize)
+                .block(blockTimeoutMs);
+        Map<String, StreamEntryID> offsets = Map.of(streamKey, StreamEntryID.XREADGROUP_UNDELIVERED_ENTRY);
+
+        while (running) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                List<Map.Entry<String, List<StreamEntry>>> response =
+                        jedis.xreadGroup(consumerGroup, consumerName, params, offsets);
+
+                if (response == null || response.isEmpty()) {
+                    continue;
+                }
+
+                processAndAcknowledge(jedis, response.get(0).getValue());
+
+            } catch (JedisDataException e) {
+                // the stream (and its group) disappears if the key is deleted, e.g. by a FLUSHDB
+                if (e.getMessage() != null && e.getMessage().startsWith("NOGROUP")) {
+                    createGroup();
+                } else {
+                    handleReadError(consumerName, e);
+                }
+            } catch (Exception e) {
+                handleReadError(consumerName, e);
+            }
+        }
+    }
+
+    /**
+     * Claims the pending entries that have been idle for longer than the configured threshold, i.e. records
+     * whose consumer died or failed to process them, and processes them again. Records already delivered
+     * the maximum number of times are moved to the dead-letter stream instead.
+     */
+    @Scheduled(fixedDelayString = "${streams.recovery-interval-ms:30000}")
+    public void recoverPendingEntries() {
+        if (!running) {
+            return;
+        }
+
+        String recoveryConsumer = InstanceName.get() + "-recovery";
+        XAutoClaimParams params = XAutoClaimParams.xAutoClaimParams().count(batchSize);
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            StreamEntryID cursor = new StreamEntryID(0, 0);
+            do {
+                Map.Entry<StreamEntryID, List<StreamEntry>> claimed =
+                        jedis.xautoclaim(streamKey, consumerGroup, recoveryConsumer, claimMinIdleMs, cursor, params);
+                cursor = claimed.getKey();
+
+                List<StreamEntry> records = claimed.getValue();
+                if (records.isEmpty()) {
+                    continue;
+                }
+                claimedCounter.increment(records.size());
+                log.warn("Claimed {} idle pending records of stream {}", records.size(), streamKey);
+
+                Map<StreamEntryID, Long> deliveries = deliveryCounts(jedis, recoveryConsumer, records);
+
+                List<StreamEntry> retryable = new ArrayList<>();
+                for (StreamEntry record : records) {
+                    if (record.getFields() == null) {
+                        // the record was trimmed from the stream, there is nothing left to process
+                        jedis.xack(streamKey, consumerGroup, record.getID());
+                    } else if (deliveries.getOrDefault(record.getID(), 0L) > maxDeliveries) {
+                        deadLetter(jedis, record, deliveries.get(record.getID()));
+                    } else {
+                        retryable.add(record);
+                    }
+                }
+
+                processAndAcknowledge(jedis, retryable);
+
+            } while (running && !cursor.equals(new StreamEntryID(0, 0)));
+
+            pendingEntries.set(jedis.xpending(streamKey, consumerGroup).getTotal());
+
+        } catch (Exception e) {
+            log.error("Error recovering pending records of stream {}: {}", streamKey, e.getMessage(), e);
+        }
+    }
+
+    private void processAndAcknowledge(Jedis jedis, List<StreamEntry> records) {
+        Map<String, Map<String, Object>> payloads = new LinkedHashMap<>();
+        List<StreamEntryID> converted = new ArrayList<>();
+        for (StreamEntry record : records) {
+            try {
+                payloads.put(streamKey + ":" + record.getID(), toPayload(record));
+                converted.add(record.getID());
+            } catch (Exception e) {
+                log.error("Error processing record {} of stream {}: {}",
+                        record.getID(), streamKey, e.getMessage(), e);
+            }
+        }
+
+        if (converted.isEmpty()) {
+            return;
+        }
+
+        // if the insert fails nothing is acknowledged, and the whole batch is recovered later
+        int created = outboxService.createTasks(taskType(), payloads);
+        jedis.xack(streamKey, consumerGroup, converted.toArray(new StreamEntryID[0]));
+
+        log.info("Created {} outbox tasks from {} records of stream {}", created, converted.size(), streamKey);
+    }
+
+    /**
+     * Reads the delivery count of each claimed record, with one XPENDING per record in a single pipeline.
+     * A range query over the batch would also return, and be capped by, the other entries of the range
+     * owned by the same consumer.
+     */
+    private Map<StreamEntryID, Long> deliveryCounts(Jedis jedis, String consumer, List<StreamEntry> records) {
+        List<Response<List<StreamPendingEntry>>> responses = new ArrayList<>(records.size());
+        Pipeline pipeline = jedis.pipelined();
+        for (StreamEntry record : records) {
+            responses.add(pipeline.xpending(streamKey, consumerGroup,
+                    XPendingParams.xPendingParams(record.getID(), record.getID(), 1).consumer(consumer)));
+        }
+        pipeline.sync();
+
+        Map<StreamEntryID, Long> deliveries = new HashMap<>();
+        for (Response<List<StreamPendingEntry>> response : responses) {
+            response.get().forEach(entry -> deliveries.put(entry.getID(), entry.getDeliveredTimes()));
+        }
+        return deliveries;
+    }
+
+    private void deadLetter(Jedis jedis, StreamEntry record, long deliveries) {
+        Map<String, String> fields = new HashMap<>(record.getFields());
+        fields.put("originalId", record.getID().toString());
+        fields.put("deliveries", String.valueOf(deliveries));
+
+        jedis.xadd(deadLetterKey, StreamEntryID.NEW_ENTRY, fields);
+        jedis.xack(streamKey, consumerGroup, record.getID());
+        deadLetteredCounter.increment();
+
+        log.error("Moved record {} of stream {} to {} after {} deliveries",
+                record.getID(), streamKey, deadLetterKey, deliveries);
+    }
+
+    private void registerMetrics() {
+        Gauge.builder("streams.pending", pendingEntries, AtomicLong::get)
+                .description("Entries delivered but not yet acknowledged in the consumer group")
+                .tag("stream", streamKey)
+                .register(meterRegistry);
+        claimedCounter = Counter.builder("streams.claimed")
+                .description("Idle pending entries claimed by the recovery pass")
+                .tag("stream", streamKey)
+                .register(meterRegistry);
+        deadLetteredCounter = Counter.builder("streams.dead.lettered")
+                .description("Entries moved to the dead-letter stream")
+                .tag("stream", streamKey)
+                .register(meterRegistry);
+    }
+
+    private void handleReadError(String consumerName, Exception e) {
+        if (!running) {
+            return;
+        }
+        log.error("Error in consumer {} of stream {}: {}", consumerName, streamKey, e.getMessage(), e);
+        try {
+            Thread.sleep(blockTimeoutMs); // back off instead of spinning while Redis is unreachable
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private void createGroup() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            // create the stream together with the group, reading it from the beginning
+            jedis.xgroupCreate(streamKey, consumerGroup, new StreamEntryID(0, 0), true);
+        } catch (Exception e) {
+            log.warn("Consumer group might already exist: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package it.unipi.distribooked.utils;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Name identifying this application instance, used wherever several instances must not share an identity
+ * (stream consumer names, outbox task leases).
+ */
+public class InstanceName {
+
+    private static final String NAME = resolve();
+
+    private InstanceName() {
+        // Utility class, no need to instantiate
+    }
+
+    public static String get() {
+        return NAME;
+    }
+
+    private static String resolve() {
+        String host = System.getenv("HOSTNAME");
+        if (host == null || host.isBlank()) {
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                host = "unknown";
+            }
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+}
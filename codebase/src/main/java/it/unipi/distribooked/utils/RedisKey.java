@@ -6,6 +6,10 @@ public enum RedisKey {
     LIBRARY_RESERVATIONS("lib:%s:res"),
     LIBRARY_LOANS("lib:%s:loans"),
     LIBRARY_OVERDUE("lib:%s:overdue"),
+    // loans of a library (LIBRARY_HASH_ENTRY members) scored by due date in epoch millis
+    LIBRARY_DUE_ZSET("lib:%s:due"),
+    // set once the loans created before the due date indexes have been added to them
+    DUE_INDEX_BACKFILLED("migration:due-index"),
     USER_HASH_ENTRY("lib:%s:book:%s:info"),
     LIBRARY_HASH_ENTRY("user:%s:book:%s:start"),
 
@@ -19,7 +23,9 @@ public enum RedisKey {
     REMOVE_LIBRARY_STREAM("stream:remove-library"),
     INCREMENT_COPIES_STREAM("stream:increment-copies"),
     ADD_LIBRARY_STREAM("stream:add-library"),
-    COMPLETED_LOANS_STREAM("stream:completed-loans");
+    COMPLETED_LOANS_STREAM("stream:completed-loans"),
+    // records of a stream that could not be processed within the maximum number of deliveries
+    DEAD_LETTER_STREAM("%s:dead-letter");
 
     private final String pattern;
 
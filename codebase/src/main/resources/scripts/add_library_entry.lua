@@ -1,12 +1,13 @@
 -- Keys: availability key, stream key
 -- Args: bookId, libraryId, initialValue, timestamp
+-- Reply: {0} on success, {1, error message} on failure
 local availabilityKey = KEYS[1]
 local streamKey = KEYS[2]
 
 -- Check if the key already exists
 local exists = redis.call('EXISTS', availabilityKey)
 if exists == 1 then
-    return cjson.encode({["err"] = "Library entry already exists"})
+    return {1, "Library entry already exists"}
 end
 
 -- Set the initial value
@@ -22,6 +23,4 @@ local streamMessage = cjson.encode({
 })
 redis.call('XADD', streamKey, '*', 'data', streamMessage)
 
-return cjson.encode({
-    ["status"] = "Library entry added successfully"
-})
\ No newline at end of file
+return {0}
\ No newline at end of file
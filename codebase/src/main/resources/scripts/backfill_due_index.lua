@@ -0,0 +1,27 @@
+-- Index one page of a library hash in the library due date zset, for the loans created before the index
+-- existed. Entries are scanned page by page, so that very large hashes do not block Redis.
+local hashKey = KEYS[1]       -- library loans / overdue hash
+local libraryDueKey = KEYS[2] -- library due date zset
+
+local cursor = ARGV[1]                 -- HSCAN cursor ("0" to start)
+local count = tonumber(ARGV[2])        -- HSCAN COUNT hint
+local loanDuration = tonumber(ARGV[3]) -- loan duration in ms for the loans hash, 0 for the overdue hash
+
+local scan = redis.call('HSCAN', hashKey, cursor, 'COUNT', count)
+local entries = scan[2]
+
+for i = 1, #entries, 2 do
+    local time = tonumber(entries[i + 1])
+    if time then
+        if loanDuration > 0 then
+            -- loan start time: due at the end of the loan, unless the loan is already indexed
+            redis.call('ZADD', libraryDueKey, 'NX', time + loanDuration, entries[i])
+        else
+            -- time the loan was marked overdue: due no later than that, as in mark_loan_overdue.lua
+            redis.call('ZADD', libraryDueKey, 'LT', time, entries[i])
+        end
+    end
+end
+
+-- Reply: nextCursor
+return scan[1]
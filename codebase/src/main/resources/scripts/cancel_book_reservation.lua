@@ -1,4 +1,5 @@
 -- Lua script to cancel a reservation
+-- Reply: {0} on success, {1, error message} on failure
 local availabilityKey = KEYS[1]       -- book availability key
 local userResLoansKey = KEYS[2]      -- user reservations hash key
 local libraryResKey = KEYS[3]        -- library reservations hash key
@@ -10,12 +11,12 @@ local zsetMember = ARGV[4]
 
 -- Check if user reservation exists
 if redis.call('HEXISTS', userResLoansKey, userReservationField) == 0 then
-    return cjson.encode({["err"] = "User reservation does not exist"})
+    return {1, "User reservation does not exist"}
 end
 
 -- Check if library reservation exists
 if redis.call('HEXISTS', libraryResKey, libraryReservationField) == 0 then
-    return cjson.encode({["err"] = "Library reservation does not exist"})
+    return {1, "Library reservation does not exist"}
 end
 
 -- Delete reservation from user reservations hash
@@ -31,9 +32,4 @@ redis.call('ZREM', expirationZSetKey, zsetMember)
 redis.call('INCR', availabilityKey)
 
 -- Return success
-return cjson.encode({
-    ["status"] = "Reservation cancelled successfully",
-    ["userId"] = ARGV[1],
-    ["bookId"] = ARGV[2],
-    ["libraryId"] = ARGV[3]
-})
\ No newline at end of file
+return {0}
\ No newline at end of file
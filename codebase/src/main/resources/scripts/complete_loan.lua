@@ -1,4 +1,5 @@
 -- Complete a loan by removing it from either LIBRARY_LOANS or LIBRARY_OVERDUE
+-- Reply: {0} on success, {1, error message} on failure
 local userResLoansKey = KEYS[1]      -- user activity key
 local libraryLoansKey = KEYS[2]      -- library loans key
 local libraryOverdueKey = KEYS[3]    -- library overdue key
@@ -7,13 +8,14 @@ local availabilityKey = KEYS[5]       -- book availability key
 local userField = KEYS[6]             -- user hash field
 local libraryField = KEYS[7]          -- library hash field
 local streamKey = KEYS[8]             -- stream key
+local libraryDueKey = KEYS[9]         -- library due date zset
 
 -- Check if loan exists in LIBRARY_LOANS
 local inLoans = redis.call('HEXISTS', libraryLoansKey, libraryField)
 local inOverdue = redis.call('HEXISTS', libraryOverdueKey, libraryField)
 
 if inLoans == 0 and inOverdue == 0 then
-    return cjson.encode({["err"] = "Loan not found"})
+    return {1, "Loan not found"}
 end
 
 -- Remove from user activity
@@ -29,6 +31,9 @@ else
     redis.call('HDEL', libraryOverdueKey, libraryField)
 end
 
+-- Remove from the library due date index
+redis.call('ZREM', libraryDueKey, libraryField)
+
 -- Increment book availability
 redis.call('INCR', availabilityKey)
 
@@ -41,6 +46,4 @@ local streamMessage = cjson.encode({
 })
 redis.call('XADD', streamKey, '*', 'data', streamMessage)
 
-return cjson.encode({
-    ["status"] = "Loan completed successfully"
-})
\ No newline at end of file
+return {0}
\ No newline at end of file
@@ -1,12 +1,13 @@
 -- Keys: availability key
 -- Args: bookId, libraryId, timestamp
+-- Reply: {0} on success, {1, error message} on failure
 local availabilityKey = KEYS[1]
 local streamKey = KEYS[2]
 
 -- Check availability
 local available = redis.call('GET', availabilityKey)
 if not available or tonumber(available) <= 0 then
-    return cjson.encode({["err"] = "No available copies"})
+    return {1, "No available copies"}
 end
 
 -- Decrement availability
@@ -21,6 +22,4 @@ local streamMessage = cjson.encode({
 })
 redis.call('XADD', streamKey, '*', 'data', streamMessage)
 
-return cjson.encode({
-    ["status"] = "Copies decremented successfully"
-})
\ No newline at end of file
+return {0}
\ No newline at end of file
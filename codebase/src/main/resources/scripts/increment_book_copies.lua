@@ -1,11 +1,12 @@
 -- Increment book copies and add stream message
+-- Reply: {0, fields...} on success, {1, error message} on failure
 local availabilityKey = KEYS[1]    -- book availability key
 local streamKey = KEYS[2]          -- stream key
 
 -- Check if the key exists
 local exists = redis.call('EXISTS', availabilityKey)
 if exists == 0 then
-    return cjson.encode({["err"] = "Key not found"})
+    return {1, "Key not found"}
 end
 
 -- Increment the availability counter
@@ -21,7 +22,5 @@ local streamMessage = cjson.encode({
 })
 redis.call('XADD', streamKey, '*', 'data', streamMessage)
 
-return cjson.encode({
-    ["status"] = "Success",
-    ["newValue"] = newValue
-})
\ No newline at end of file
+-- Reply: {0, newValue}
+return {0, newValue}
\ No newline at end of file
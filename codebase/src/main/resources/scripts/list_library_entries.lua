@@ -0,0 +1,32 @@
+-- List every entry of a library hash together with its remaining field TTL
+-- in a single round trip, instead of one HPTTL call per field.
+local hashKey = KEYS[1] -- library loans / reservations / overdue hash
+
+local entries = redis.call('HGETALL', hashKey)
+local result = {}
+
+if #entries == 0 then
+    return result
+end
+
+-- HPTTL is issued in chunks to stay well below Lua's unpack() limit
+local chunkSize = 500
+local fieldCount = #entries / 2
+
+for start = 1, fieldCount, chunkSize do
+    local last = math.min(start + chunkSize - 1, fieldCount)
+    local fields = {}
+    for i = start, last do
+        fields[#fields + 1] = entries[(i * 2) - 1]
+    end
+
+    local ttls = redis.call('HPTTL', hashKey, 'FIELDS', #fields, unpack(fields))
+
+    for i = start, last do
+        result[#result + 1] = entries[(i * 2) - 1]     -- field
+        result[#result + 1] = entries[i * 2]           -- value
+        result[#result + 1] = ttls[i - start + 1]      -- remaining TTL in ms (-1 = no TTL)
+    end
+end
+
+return result
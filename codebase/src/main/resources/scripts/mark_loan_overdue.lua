@@ -0,0 +1,15 @@
+-- Mark a loan as overdue, keeping the library due date index consistent
+-- Reply: {0}
+local libraryOverdueKey = KEYS[1] -- library overdue key
+local libraryDueKey = KEYS[2]     -- library due date zset
+local libraryField = KEYS[3]      -- library hash field
+
+local currentTime = tonumber(ARGV[1])
+
+redis.call('HSET', libraryOverdueKey, libraryField, tostring(currentTime))
+
+-- An overdue loan is due no later than now: keep the original due date if already indexed,
+-- otherwise (or if it was indexed in the future) index it as due now
+redis.call('ZADD', libraryDueKey, 'LT', currentTime, libraryField)
+
+return {0}
@@ -1,4 +1,5 @@
 -- Keys for atomic loan conversion
+-- Reply: {0, fields...} on success, {1, error message} on failure
 local userResLoansKey = KEYS[1]      -- user activity key
 local libraryResKey = KEYS[2]        -- library reservations key
 local libraryLoansKey = KEYS[3]      -- library loans key
@@ -6,6 +7,7 @@ local resExpirationZSetKey = KEYS[4] -- reservation expiration zset
 local loanExpirationZSetKey = KEYS[5] -- loan expiration zset
 local userReservationField = KEYS[6]  -- user hash field
 local libraryReservationField = KEYS[7] -- library hash field
+local libraryDueKey = KEYS[8]        -- library due date zset
 
 local userId = ARGV[1]
 local bookId = ARGV[2]
@@ -15,7 +17,7 @@ local loanDuration = tonumber(ARGV[5]) -- 30 days in seconds
 
 -- Check if reservation exists
 if redis.call('HEXISTS', userResLoansKey, userReservationField) == 0 then
-    return cjson.encode({["err"] = "Reservation not found"})
+    return {1, "Reservation not found"}
 end
 
 -- Get current reservation data
@@ -45,8 +47,8 @@ redis.call('HSET', libraryLoansKey, libraryReservationField, tostring(currentTim
 -- Set loan expiry time
 redis.call('HPEXPIRE', libraryLoansKey, loanDuration * 1000, "FIELDS", 1, libraryReservationField)
 
-return cjson.encode({
-    ["status"] = "Loan conversion successful",
-    ["loanTime"] = currentTime,
-    ["expiryTime"] = loanExpiryTime
-})
\ No newline at end of file
+-- Index the loan by due date within the library
+redis.call('ZADD', libraryDueKey, loanExpiryTime, libraryReservationField)
+
+-- Reply: {0, loanTime, expiryTime}
+return {0, currentTime, loanExpiryTime}
\ No newline at end of file
@@ -5,22 +5,16 @@
 -- ARGV[2]: bookId
 -- ARGV[3]: libraryId
 -- ARGV[4]: timestamp
--- Return value: JSON string with the result of the operation
+-- Return value: {0} on success, {1, error message[, expected, current]} on failure
 
 local exists = redis.call('EXISTS', KEYS[1])
 if exists == 0 then
-    return cjson.encode({
-        err = "Library entry not found"
-    })
+    return {1, "Library entry not found"}
 end
 
 local currentAvailability = redis.call('GET', KEYS[1])
 if currentAvailability ~= ARGV[1] then
-    return cjson.encode({
-        err = "Cannot remove book. All copies must be available in the library",
-        expected = ARGV[1],
-        current = currentAvailability
-    })
+    return {1, "Cannot remove book. All copies must be available in the library", ARGV[1], currentAvailability}
 end
 
 local deleted = redis.call('DEL', KEYS[1])
@@ -34,11 +28,7 @@ if deleted == 1 then
     })
     redis.call('XADD', KEYS[2], '*', 'data', streamMessage)
 
-    return cjson.encode({
-        success = true
-    })
+    return {0}
 else
-    return cjson.encode({
-        err = "Failed to remove library entry"
-    })
+    return {1, "Failed to remove library entry"}
 end
\ No newline at end of file
@@ -0,0 +1,36 @@
+-- Scan one page of a library hash together with the remaining TTL of each field,
+-- so that callers can page through very large hashes without loading them whole.
+local hashKey = KEYS[1]         -- library loans / reservations hash
+local cursor = ARGV[1]          -- HSCAN cursor ("0" to start)
+local count = tonumber(ARGV[2]) -- HSCAN COUNT hint
+
+local scan = redis.call('HSCAN', hashKey, cursor, 'COUNT', count)
+local entries = scan[2]
+local result = { scan[1] }
+
+if #entries == 0 then
+    return result
+end
+
+-- COUNT is only a hint, so HPTTL is still issued in chunks to stay below unpack()'s limit
+local chunkSize = 500
+local fieldCount = #entries / 2
+
+for start = 1, fieldCount, chunkSize do
+    local last = math.min(start + chunkSize - 1, fieldCount)
+    local fields = {}
+    for i = start, last do
+        fields[#fields + 1] = entries[(i * 2) - 1]
+    end
+
+    local ttls = redis.call('HPTTL', hashKey, 'FIELDS', #fields, unpack(fields))
+
+    for i = start, last do
+        result[#result + 1] = entries[(i * 2) - 1]     -- field
+        result[#result + 1] = entries[i * 2]           -- value
+        result[#result + 1] = ttls[i - start + 1]      -- remaining TTL in ms (-1 = no TTL)
+    end
+end
+
+-- Reply: { nextCursor, field, value, ttl, field, value, ttl, ... }
+return result
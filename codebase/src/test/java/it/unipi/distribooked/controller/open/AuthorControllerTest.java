@@ -1,6 +1,8 @@
 package it.unipi.distribooked.controller.open;
 
+import com.jayway.jsonpath.JsonPath;
 import it.unipi.distribooked.model.Author;
+import it.unipi.distribooked.model.AuthorBooksBucket;
 import it.unipi.distribooked.model.embedded.EmbeddedAuthor;
 import it.unipi.distribooked.model.embedded.EmbeddedBookAuthor;
 import it.unipi.distribooked.repository.mongo.AuthorRepository;
@@ -10,10 +12,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.utility.DockerImageName;
@@ -56,6 +61,9 @@ class AuthorControllerTest {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     private Author author1, author2, author3, author4, author5, author6, author7;
 
     @BeforeAll
@@ -126,6 +134,7 @@ class AuthorControllerTest {
     @AfterEach
     void cleanUp() {
         authorRepository.deleteAll();
+        mongoTemplate.remove(new Query(), AuthorBooksBucket.class);
     }
 
     @AfterAll
@@ -181,4 +190,39 @@ class AuthorControllerTest {
                 .andExpect(jsonPath("$.data.books").isArray());
 
     }
+
+
+    @Test
+    void testGetAuthorBooksWithCursor() throws Exception {
+
+        String authorID = author2.getId().toHexString();
+
+        // Add the books to the author_books buckets, adding a book twice has no effect
+        for (EmbeddedBookAuthor book : author2.getBooks()) {
+            Assertions.assertTrue(authorRepository.updateAuthorWithBook(author2.getId(), book));
+        }
+        Assertions.assertFalse(authorRepository.updateAuthorWithBook(author2.getId(), author2.getBooks().get(0)));
+
+        MvcResult firstPage = mockMvc.perform(get("/api/v1/authors/" + authorID + "/books")
+                        .param("size", "1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andDo(print())
+                .andExpect(jsonPath("$.data.books.length()").value(1))
+                .andExpect(jsonPath("$.data.books[0].title").value("Effective Java"))
+                .andExpect(jsonPath("$.data.nextCursor").isNotEmpty())
+                .andReturn();
+
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.data.nextCursor");
+
+        mockMvc.perform(get("/api/v1/authors/" + authorID + "/books")
+                        .param("size", "1")
+                        .param("cursor", cursor)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andDo(print())
+                .andExpect(jsonPath("$.data.books.length()").value(1))
+                .andExpect(jsonPath("$.data.books[0].title").value("Design Patterns"))
+                .andExpect(jsonPath("$.data.nextCursor").doesNotExist());
+    }
 }
@@ -1,7 +1,10 @@
 package it.unipi.distribooked.controller.open;
 
 import it.unipi.distribooked.repository.redis.RedisBookRepository;
+import it.unipi.distribooked.service.SuggestionService;
+import com.jayway.jsonpath.JsonPath;
 import it.unipi.distribooked.model.Author;
+import it.unipi.distribooked.model.AuthorBooksBucket;
 import it.unipi.distribooked.model.Book;
 import it.unipi.distribooked.model.embedded.Address;
 import it.unipi.distribooked.model.embedded.EmbeddedAuthor;
@@ -15,10 +18,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -49,9 +55,15 @@ class BookControllerTest {
     @Autowired
     private AuthorRepository authorRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
     private RedisBookRepository redisBookRepository;
 
+    @Autowired
+    private SuggestionService suggestionService;
+
 
     @Container
     @ServiceConnection(name = "mongo")
@@ -164,8 +176,8 @@ class BookControllerTest {
         Address address2 = new Address("Corso Vittorio Emanuele, 45", "Milano", "MI", "20121", "Italy");
 
 
-        library1 = new EmbeddedLibrary(libraryId1, "Central Library", Map.of("Position", location1), address1, 4);
-        library2 = new EmbeddedLibrary(libraryId2, "Tech Library", Map.of("Position", location2), address2, 3);
+        library1 = new EmbeddedLibrary(libraryId1, "Central Library", location1, address1, 4);
+        library2 = new EmbeddedLibrary(libraryId2, "Tech Library", location2, address2, 3);
 
 
         book1 = new Book(bookId1, "Effective Java", "Best practices for Java", "2008-05-08", "English",
@@ -204,6 +216,11 @@ class BookControllerTest {
 
         authorRepository.saveAll(List.of(author1, author2, author3, author4, author5, author6, author7));
         bookRepository.saveAll(List.of(book1, book2, book3, book4, book5, book6));
+
+        // The full list of books of each author is stored in the author_books buckets
+        for (Author author : List.of(author1, author2, author3, author4, author5, author6, author7)) {
+            author.getBooks().forEach(book -> authorRepository.updateAuthorWithBook(author.getId(), book));
+        }
     }
 
     @AfterEach
@@ -211,6 +228,7 @@ class BookControllerTest {
 
         bookRepository.deleteAll();
         authorRepository.deleteAll();
+        mongoTemplate.remove(new Query(), AuthorBooksBucket.class);
 
         redisBookRepository.removeLibraryEntry(book1.getId().toHexString(), library1.getId().toHexString(), 10);
         redisBookRepository.removeLibraryEntry(book1.getId().toHexString(), library2.getId().toHexString(), 2);
@@ -270,6 +288,63 @@ class BookControllerTest {
 
 
 
+    @Test
+    void testSearchBooksByWords() throws Exception {
+        mockMvc.perform(get("/api/v1/books/search")
+                        .param("title", "java effective")
+                        .param("page", "0")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.books[0].title").value("Effective Java"))
+                .andDo(print());
+    }
+
+    @Test
+    void testSearchBooksByPrefix() throws Exception {
+        mockMvc.perform(get("/api/v1/books/search")
+                        .param("title", "clean c")
+                        .param("prefix", "true")
+                        .param("page", "0")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.totalItems").value(1))
+                .andExpect(jsonPath("$.data.books[0].title").value("Clean Code"))
+                .andDo(print());
+    }
+
+
+
+
+    @Test
+    void testSuggest() throws Exception {
+        suggestionService.rebuild(); // the books of the test were added after the startup build
+
+        mockMvc.perform(get("/api/v1/books/suggest")
+                        .param("prefix", "E")
+                        .param("limit", "3")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.suggestions.length()").value(3))
+                .andExpect(jsonPath("$.data.suggestions[0].type").value("AUTHOR"))
+                .andExpect(jsonPath("$.data.suggestions[0].text").value("Erich Gamma"))
+                .andExpect(jsonPath("$.data.suggestions[1].text").value("Extreme Programming Explained"))
+                .andExpect(jsonPath("$.data.suggestions[2].text").value("Effective Java"))
+                .andDo(print());
+    }
+
+    @Test
+    void testSuggestLimitAboveMaximum() throws Exception {
+        mockMvc.perform(get("/api/v1/books/suggest")
+                        .param("prefix", "E")
+                        .param("limit", "11") // suggest.max-results is 10
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+    }
+
+
+
+
     // DONE
     @Test
     void testGetBookByIdWithLibraries() throws Exception {
@@ -288,6 +363,83 @@ class BookControllerTest {
 
 
 
+    @Test
+    void testGetBookByIdWithNearestLibraries() throws Exception {
+        String Id = book5.getId().toHexString();
+
+        // the libraries are about 280 km apart, the search starts from the Central Library
+        mockMvc.perform(get("/api/v1/books/" + Id)
+                        .param("latitude", "13.205")
+                        .param("longitude", "80.152")
+                        .param("radius", "500000")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.branches.length()").value(2))
+                .andExpect(jsonPath("$.data.branches[0].libraryName").value("Central Library"))
+                .andExpect(jsonPath("$.data.branches[0].distance").value(0.0))
+                .andExpect(jsonPath("$.data.branches[1].libraryName").value("Tech Library"))
+                .andDo(print());
+
+        mockMvc.perform(get("/api/v1/books/" + Id)
+                        .param("latitude", "13.205")
+                        .param("longitude", "80.152")
+                        .param("radius", "500000")
+                        .param("available", "true")
+                        .param("nearest", "1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.branches.length()").value(1))
+                .andExpect(jsonPath("$.data.branches[0].libraryName").value("Central Library"))
+                .andDo(print());
+    }
+
+
+
+    @Test
+    void testGetBookByIdWithLiveAvailability() throws Exception {
+        String Id = book5.getId().toHexString();
+
+        mockMvc.perform(get("/api/v1/books/" + Id)
+                        .param("latitude", "13.205")
+                        .param("longitude", "80.152")
+                        .param("radius", "500000")
+                        .param("liveAvailability", "true")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.branches[0].libraryName").value("Central Library"))
+                .andExpect(jsonPath("$.data.branches[0].availableCopies").value(8))
+                .andExpect(jsonPath("$.data.branches[1].libraryName").value("Tech Library"))
+                .andExpect(jsonPath("$.data.branches[1].availableCopies").value(3))
+                .andDo(print());
+    }
+
+
+
+    @Test
+    void testGetBooksAvailability() throws Exception {
+        mockMvc.perform(get("/api/v1/books/availability")
+                        .param("bookIds", book1.getId().toHexString() + "," + book2.getId().toHexString())
+                        .param("libraryIds", library1.getId().toHexString() + "," + library2.getId().toHexString())
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.copies[0][0]").value(10))
+                .andExpect(jsonPath("$.data.copies[0][1]").value(2))
+                .andExpect(jsonPath("$.data.copies[1][0]").value(15))
+                .andExpect(jsonPath("$.data.copies[1][1]").value(8))
+                .andDo(print());
+
+        // without libraries, the columns are the libraries holding the books
+        mockMvc.perform(get("/api/v1/books/availability")
+                        .param("bookIds", book5.getId().toHexString())
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.libraryIds.length()").value(2))
+                .andExpect(jsonPath("$.data.copies[0].length()").value(2))
+                .andDo(print());
+    }
+
+
+
     // DONE
     @Test
     void testFilterBooks() throws Exception {
@@ -307,6 +459,79 @@ class BookControllerTest {
 
 
 
+    @Test
+    void testFilterBooksTotalElements() throws Exception {
+
+        // the first page is full, so the total comes from the count cache
+        mockMvc.perform(get("/api/v1/books/filter")
+                        .param("category", "Software Engineering")
+                        .param("sortByPopularity", "false")
+                        .param("page", "0")
+                        .param("size", "2")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.content.length()").value(2))
+                .andExpect(jsonPath("$.data.page.totalElements").value(4))
+                .andExpect(jsonPath("$.data.page.totalPages").value(2))
+                .andDo(print());
+    }
+
+    @Test
+    void testGetBooksWithCursor() throws Exception {
+
+        MvcResult firstPage = mockMvc.perform(get("/api/v1/books")
+                        .param("cursor", "")
+                        .param("size", "4")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.content.length()").value(4))
+                .andExpect(jsonPath("$.data.nextCursor").isNotEmpty())
+                .andDo(print())
+                .andReturn();
+
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.data.nextCursor");
+
+        mockMvc.perform(get("/api/v1/books")
+                        .param("cursor", cursor)
+                        .param("size", "4")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.content.length()").value(2))
+                .andExpect(jsonPath("$.data.nextCursor").doesNotExist())
+                .andDo(print());
+    }
+
+
+
+    @Test
+    void testFilterBooksByPopularityWithCursor() throws Exception {
+
+        MvcResult firstPage = mockMvc.perform(get("/api/v1/books/filter")
+                        .param("sortByPopularity", "true")
+                        .param("cursor", "")
+                        .param("size", "2")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.content[0].title").value("Clean Code"))
+                .andExpect(jsonPath("$.data.content[1].title").value("Test Driven Development"))
+                .andDo(print())
+                .andReturn();
+
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.data.nextCursor");
+
+        mockMvc.perform(get("/api/v1/books/filter")
+                        .param("sortByPopularity", "true")
+                        .param("cursor", cursor)
+                        .param("size", "2")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.content[0].title").value("Extreme Programming Explained"))
+                .andExpect(jsonPath("$.data.content[1].title").value("Effective Java"))
+                .andDo(print());
+    }
+
+
+
     @Test
     void testGetBookAvailability() throws Exception {
 
@@ -17,6 +17,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -28,9 +29,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -348,6 +353,38 @@ class LoanManagementControllerTest {
 
 
 
+    @Test
+    void testGetLoansDueSoon() throws Exception {
+
+        reservationRepository.reserveBook(userId1.toString(), book3.getId().toHexString(), book3.getBranches().get(0).getId().toHexString(),book3.getTitle(), "Central Library");
+        loanRepository.markAsLoan(book3.getBranches().get(0).getId().toHexString(), userId1.toString(), book3.getId().toHexString());
+
+        String libraryId = libraryId1.toHexString();
+
+        mockMvc.perform(get("/api/v1/admin/loans/" + libraryId + "/due-soon")
+                        .param("days", "30")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.loans.length()").value(1))
+                .andDo(print());
+
+        mockMvc.perform(get("/api/v1/admin/loans/" + libraryId + "/overdue")
+                        .param("limit", "5")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.overdueLoans.length()").value(0))
+                .andDo(print());
+
+
+        loanRepository.completeLoan(book3.getBranches().get(0).getId().toHexString(), userId1.toString(), book3.getId().toHexString());
+    }
+
+
+
+
+
+
+
     @Test
     void testGetAllLoans() throws Exception {
 
@@ -408,6 +445,68 @@ class LoanManagementControllerTest {
 
 
 
+    @Test
+    void testGetLoansPage() throws Exception {
+
+        reservationRepository.reserveBook(userId1.toString(), book1.getId().toHexString(), book1.getBranches().get(0).getId().toHexString(),book1.getTitle(), "Central Library");
+        reservationRepository.reserveBook(userId2.toString(), book2.getId().toHexString(), book2.getBranches().get(0).getId().toHexString(),book2.getTitle(), "Central Library");
+
+        loanRepository.markAsLoan(book1.getBranches().get(0).getId().toHexString(), userId1.toString(), book1.getId().toHexString());
+        loanRepository.markAsLoan(book2.getBranches().get(0).getId().toHexString(), userId2.toString(), book2.getId().toHexString());
+
+        String libraryId = libraryId1.toHexString();
+
+        mockMvc.perform(get("/api/v1/admin/loans/" + libraryId + "/loans/page")
+                        .param("size", "10")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.loans.content.length()").value(2))
+                .andDo(print());
+
+        mockMvc.perform(get("/api/v1/admin/loans/" + libraryId + "/loans/page")
+                        .param("cursor", "not-a-cursor")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andDo(print());
+
+
+        loanRepository.completeLoan(book1.getBranches().get(0).getId().toHexString(), userId1.toString(), book1.getId().toHexString());
+        loanRepository.completeLoan(book2.getBranches().get(0).getId().toHexString(), userId2.toString(), book2.getId().toHexString());
+    }
+
+
+
+
+
+    @Test
+    void testStreamReservations() throws Exception {
+
+        reservationRepository.reserveBook(userId1.toString(), book3.getId().toHexString(), book3.getBranches().get(1).getId().toHexString(),book3.getTitle(), "Tech Library");
+        reservationRepository.reserveBook(userId2.toString(), book5.getId().toHexString(), book5.getBranches().get(1).getId().toHexString(),book5.getTitle(), "Tech Library");
+
+        String libraryId = libraryId2.toHexString();
+
+        MvcResult result = mockMvc.perform(get("/api/v1/admin/loans/" + libraryId + "/reservations/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andDo(print());
+
+        Assertions.assertEquals(2, result.getResponse().getContentAsString().lines().count());
+
+
+        reservationRepository.cancelReservation(userId1.toString(), book3.getId().toHexString(), book3.getBranches().get(1).getId().toHexString());
+        reservationRepository.cancelReservation(userId2.toString(), book5.getId().toHexString(), book5.getBranches().get(1).getId().toHexString());
+    }
+
+
+
+
+
+
     @Test
     void testGetUserReservedAndLoanedBooks() throws Exception {
 
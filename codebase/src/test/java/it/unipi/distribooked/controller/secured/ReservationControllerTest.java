@@ -37,6 +37,7 @@ import java.util.Map;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -236,6 +237,34 @@ class ReservationControllerTest {
 
 
 
+    @Test
+    void testReserveBooksBatch() throws Exception {
+
+        String requestBody = """
+                {
+                  "items": [
+                    { "bookId": "%s", "libraryId": "%s" },
+                    { "bookId": "%s", "libraryId": "%s" }
+                  ]
+                }
+                """.formatted(book1.getId().toHexString(), library1.getId().toHexString(),
+                book2.getId().toHexString(), library1.getId().toHexString());
+
+        mockMvc.perform(post("/api/v1/reservations/reserve/batch")
+                        .content(requestBody)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .with(jwt().jwt(jwt -> jwt.claim("user_id", userId.toHexString()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.results[0].reserved").value(true))
+                .andExpect(jsonPath("$.data.results[1].reserved").value(false))
+                .andDo(print());
+
+        redisReservationRepository.cancelReservation(userId.toHexString(), book1.getId().toHexString(), library1.getId().toHexString());
+    }
+
+
+
+
     @Test
     void cancelReservation() throws Exception {
 
@@ -4,7 +4,9 @@ package it.unipi.distribooked.controller.secured;
 import it.unipi.distribooked.model.*;
 import it.unipi.distribooked.model.embedded.*;
 import it.unipi.distribooked.model.enums.UserType;
+import com.jayway.jsonpath.JsonPath;
 import it.unipi.distribooked.repository.mongo.UserRepository;
+import it.unipi.distribooked.repository.mongo.custom.CustomUserRepository.ReadBook;
 import it.unipi.distribooked.repository.redis.LoanRepository;
 import it.unipi.distribooked.repository.redis.RedisBookRepository;
 import it.unipi.distribooked.repository.redis.ReservationRepository;
@@ -14,10 +16,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -25,6 +30,7 @@ import org.testcontainers.utility.DockerImageName;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +38,7 @@ import java.util.Map;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -50,6 +57,9 @@ class UserControllerTest {
     @Autowired
     private LoanRepository loanRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
 
     @Container
     @ServiceConnection(name = "mongo")
@@ -189,6 +199,7 @@ class UserControllerTest {
     @AfterEach
     void cleanUp() {
         userRepository.deleteAll();
+        mongoTemplate.remove(new Query(), UserReadingsBucket.class);
 
         reservationRepository.cancelReservation(userId.toHexString(), book2.getId().toHexString(), library2.getId().toHexString());
         loanRepository.completeLoan(library1.getId().toHexString(), userId.toHexString(), book1.getId().toHexString());
@@ -249,6 +260,44 @@ class UserControllerTest {
 
 
 
+    @Test
+    void testGetReadingsHistory() throws Exception {
+        ObjectId libraryId = new ObjectId("74b87f1a2d3b9c1234567890");
+        List<ReadBook> readBooks = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            readBooks.add(new ReadBook(userId, new EmbeddedBookRead(book1.getId(), book1.getTitle(), List.of(),
+                    libraryId, LocalDateTime.parse("2025-01-0" + i + "T10:00:00"))));
+        }
+        userRepository.addReadBooks(readBooks);
+
+        MvcResult firstPage = mockMvc.perform(get("/api/v1/users/read/history")
+                        .param("size", "2")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .with(jwt().jwt(jwt -> jwt.claim("user_id", userId.toHexString()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.readBooks.content.length()").value(2))
+                .andExpect(jsonPath("$.data.readBooks.content[0].returnDate").value("2025-01-03T10:00:00"))
+                .andExpect(jsonPath("$.data.readBooks.nextCursor").isNotEmpty())
+                .andDo(print())
+                .andReturn();
+
+        String cursor = JsonPath.read(firstPage.getResponse().getContentAsString(), "$.data.readBooks.nextCursor");
+
+        mockMvc.perform(get("/api/v1/users/read/history")
+                        .param("size", "2")
+                        .param("cursor", cursor)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .with(jwt().jwt(jwt -> jwt.claim("user_id", userId.toHexString()))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.readBooks.content.length()").value(1))
+                .andExpect(jsonPath("$.data.readBooks.content[0].returnDate").value("2025-01-01T10:00:00"))
+                .andExpect(jsonPath("$.data.readBooks.nextCursor").doesNotExist())
+                .andDo(print());
+    }
+
+
+
+
     @Test
     void testGetUserDetails() throws Exception {
         mockMvc.perform(get("/api/v1/users/details")
@@ -0,0 +1,197 @@
+package it.unipi.distribooked.service;
+
+import it.unipi.distribooked.model.Book;
+import it.unipi.distribooked.model.OutboxTask;
+import it.unipi.distribooked.model.User;
+import it.unipi.distribooked.model.UserReadingsBucket;
+import it.unipi.distribooked.model.embedded.Address;
+import it.unipi.distribooked.model.embedded.EmbeddedAuthor;
+import it.unipi.distribooked.model.embedded.EmbeddedBookRead;
+import it.unipi.distribooked.model.embedded.EmbeddedLibrary;
+import it.unipi.distribooked.model.enums.OutboxTaskType;
+import it.unipi.distribooked.model.enums.TaskStatus;
+import it.unipi.distribooked.model.enums.UserType;
+import it.unipi.distribooked.repository.mongo.BookRepository;
+import it.unipi.distribooked.repository.mongo.OutboxRepository;
+import it.unipi.distribooked.repository.mongo.UserRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// The dispatcher runs once at startup and then stays idle, the batches are processed by the tests
+@SpringBootTest(properties = "outbox.dispatch-interval-ms=3600000")
+class OutboxBatchProcessingTest {
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private OutboxRepository outboxRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Container
+    @ServiceConnection(name = "mongo")
+    private static final MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0");
+
+    @Container
+    @ServiceConnection(name = "redis")
+    private static final GenericContainer<?> redisContainer = new GenericContainer<>(DockerImageName.parse("redis:7.4.2"))
+            .withExposedPorts(6379);
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.data.mongodb.uri", mongoDBContainer::getReplicaSetUrl);
+        registry.add("spring.data.redis.host", redisContainer::getHost);
+        registry.add("spring.data.redis.port", () -> redisContainer.getMappedPort(6379));
+    }
+
+    static {
+        mongoDBContainer.start();
+        redisContainer.start();
+    }
+
+    private ObjectId bookId;
+    private ObjectId libraryId1, libraryId2;
+    private ObjectId userId;
+
+    @BeforeAll
+    static void setup() {
+        System.setProperty("spring.profiles.active", "test");
+    }
+
+    @BeforeEach
+    void setUp() {
+        bookId = new ObjectId("54b87f1a2d3b9c1234567890");
+        libraryId1 = new ObjectId("74b87f1a2d3b9c1234567890");
+        libraryId2 = new ObjectId("74b87f1a2d3b9c1234567891");
+
+        Map<String, Object> location = new HashMap<>();
+        location.put("type", "Point");
+        location.put("coordinates", new double[]{11.255, 43.769});
+        Address address = new Address("Via Roma, 10", "Firenze", "FI", "50123", "Italy");
+
+        EmbeddedLibrary library1 = new EmbeddedLibrary(libraryId1, "Central Library", location, address, 4);
+        EmbeddedLibrary library2 = new EmbeddedLibrary(libraryId2, "Tech Library", location, address, 0);
+
+        Book book = new Book(bookId, "Effective Java", "Best practices for Java", "2008-05-08", "English",
+                List.of("Programming", "Java"), "0134685997", "9780134685991", "Addison-Wesley", "https://example.com/effective-java.jpg",
+                List.of(new EmbeddedAuthor(new ObjectId("64b87f1a2d3b9c1234567890"), "Joshua Bloch")),
+                List.of(library1, library2), 100);
+        bookRepository.save(book);
+
+        userId = new ObjectId("84b87f1a2d3b9c1234567890");
+        User user = new User(userId, "Testuser", "Test", "User", LocalDate.parse("1990-01-01"), "password", UserType.USER,
+                "testmail@example.com", address, new ArrayList<>(), 0, new ArrayList<>());
+        userRepository.save(user);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        bookRepository.deleteAll();
+        userRepository.deleteAll();
+        mongoTemplate.remove(new Query(), UserReadingsBucket.class);
+        outboxRepository.deleteAll();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        mongoDBContainer.stop();
+        redisContainer.stop();
+
+        mongoDBContainer.close();
+        redisContainer.close();
+    }
+
+    @Test
+    void testCopiesBatch() {
+        createCopiesTask(OutboxTaskType.INCREMENT_BOOK_COPIES, libraryId1);
+        createCopiesTask(OutboxTaskType.DECREMENT_BOOK_COPIES, libraryId1);
+        createCopiesTask(OutboxTaskType.DECREMENT_BOOK_COPIES, libraryId1);
+        createCopiesTask(OutboxTaskType.DECREMENT_BOOK_COPIES, libraryId2); // no copies left to decrement
+
+        outboxService.processBatches();
+
+        assertEquals(3, copies(libraryId1));
+        assertEquals(0, copies(libraryId2));
+
+        List<OutboxTask> tasks = outboxRepository.findAll();
+        assertEquals(3, tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.COMPLETED)
+                .count());
+        assertEquals(List.of(libraryId2.toHexString()), tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.RETRY_SCHEDULED)
+                .map(task -> task.getPayload().get("libraryId"))
+                .toList());
+    }
+
+    @Test
+    void testReadBooksBatch() {
+        createReadBookTask(userId, 1739117578L);
+        createReadBookTask(userId, 1739290378L);
+        createReadBookTask(new ObjectId("84b87f1a2d3b9c1234567891"), 1739290378L); // no such user
+
+        outboxService.processBatches();
+
+        List<EmbeddedBookRead> history = userRepository.findReadingsHistory(userId, null, 10).getContent();
+        assertEquals(2, history.size());
+        assertEquals("Effective Java", history.get(0).getTitle());
+        assertEquals(2, userRepository.findById(userId).orElseThrow().getReadings().size());
+        assertEquals(102, bookRepository.findById(bookId).orElseThrow().getReadingsCount());
+
+        List<OutboxTask> tasks = outboxRepository.findAll();
+        assertEquals(2, tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.COMPLETED)
+                .count());
+        assertEquals(1, tasks.stream()
+                .filter(task -> task.getStatus() == TaskStatus.RETRY_SCHEDULED)
+                .count());
+    }
+
+    private void createReadBookTask(ObjectId userId, long timestamp) {
+        outboxService.createTask(OutboxTaskType.ADD_READ_BOOK, Map.of(
+                "userId", userId.toHexString(),
+                "bookId", bookId.toHexString(),
+                "libraryId", libraryId1.toHexString(),
+                "timestamp", String.valueOf(timestamp)));
+    }
+
+    private void createCopiesTask(OutboxTaskType type, ObjectId libraryId) {
+        outboxService.createTask(type, Map.of(
+                "bookId", bookId.toHexString(),
+                "libraryId", libraryId.toHexString()));
+    }
+
+    private int copies(ObjectId libraryId) {
+        return bookRepository.findById(bookId).orElseThrow().getBranches().stream()
+                .filter(branch -> branch.getId().equals(libraryId))
+                .findFirst()
+                .orElseThrow()
+                .getNumberOfCopies();
+    }
+}
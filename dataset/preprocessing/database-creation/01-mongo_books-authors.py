@@ -90,4 +90,29 @@ for book in data:
             }}
         )
 
+# Step 4: Move the Books of Each Author to Buckets, Keeping the First Ones in the Author Document
+# (authors.books-bucket-size in application.properties, the preview size matches the author details endpoint)
+BOOKS_BUCKET_SIZE = 100
+BOOKS_PREVIEW_SIZE = 20
+
+author_books_collection = db["author_books"]
+for author in authors_collection.find({}, {"books": 1}):
+    books = author.get("books", [])
+    buckets = [
+        {
+            "_id": ObjectId(),
+            "authorId": author["_id"],
+            "count": len(books[start:start + BOOKS_BUCKET_SIZE]),
+            "books": books[start:start + BOOKS_BUCKET_SIZE]
+        }
+        for start in range(0, len(books), BOOKS_BUCKET_SIZE)
+    ]
+    if buckets:
+        author_books_collection.insert_many(buckets)
+
+    authors_collection.update_one(
+        {"_id": author["_id"]},
+        {"$set": {"books": books[:BOOKS_PREVIEW_SIZE], "totalBooks": len(books)}}
+    )
+
 print("Data successfully inserted!")
@@ -38,8 +38,14 @@ def generate_geolocation(city):
         "coordinates": [longitude, latitude]  # GeoJSON format: [longitude, latitude]
     }
 
+# Readings kept in the user document and readings per history bucket
+# (users.recent-readings and users.readings-bucket-size in application.properties)
+RECENT_READINGS = 20
+READINGS_BUCKET_SIZE = 100
+
 # Generate User Embeddings
 enhanced_users = []
+readings_buckets = []
 for user in users_data:
     city = user["address"]["city"]
     user_location = generate_geolocation(city)
@@ -79,11 +85,24 @@ for user in users_data:
             "authors": book["authors"]
         })
 
+    # The full history goes to the user_readings buckets, the user keeps only the most recent readings
+    readings.sort(key=lambda reading: reading["returnDate"])
+    user_id = user.get("_id", ObjectId())
+    for start in range(0, len(readings), READINGS_BUCKET_SIZE):
+        bucket_readings = readings[start:start + READINGS_BUCKET_SIZE]
+        readings_buckets.append({
+            "_id": ObjectId(),
+            "userId": user_id,
+            "count": len(bucket_readings),
+            "readings": bucket_readings
+        })
+
     # Enhance user data
     enhanced_user = {
         **user,
+        "_id": user_id,
         "location": user_location,  # Store user's location as GeoJSON
-        "readings": readings,
+        "readings": readings[-RECENT_READINGS:],
         "savedBooks": saved_books
     }
     enhanced_users.append(enhanced_user)
@@ -92,4 +111,8 @@ for user in users_data:
 users_collection = db["users"]
 users_collection.insert_many(enhanced_users)
 
+# Insert Reading History Buckets into MongoDB
+if readings_buckets:
+    db["user_readings"].insert_many(readings_buckets)
+
 print("Users with geospatial data inserted successfully!")